@@ -0,0 +1,44 @@
+package com.smartstudy.config;
+
+import com.smartstudy.model.DocumentContent;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Moves the document_content ID generator past any existing IDs
+ *
+ * Content IDs used to come from AUTO_INCREMENT; without this a fresh generator row
+ * would hand out IDs that are already taken.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+public class ContentIdGeneratorInitializer {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    public void alignContentIdGenerator() {
+        try {
+            Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM document_content", Long.class);
+            long floor = (maxId != null ? maxId : 0) + DocumentContent.ID_ALLOCATION_SIZE + 1;
+
+            Integer rows = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM " + DocumentContent.ID_GENERATOR_TABLE + " WHERE sequence_name = ?",
+                    Integer.class, DocumentContent.ID_GENERATOR_KEY);
+            if (rows == null || rows == 0) {
+                jdbcTemplate.update("INSERT INTO " + DocumentContent.ID_GENERATOR_TABLE + " (sequence_name, next_val) VALUES (?, ?)",
+                        DocumentContent.ID_GENERATOR_KEY, floor);
+            } else {
+                jdbcTemplate.update("UPDATE " + DocumentContent.ID_GENERATOR_TABLE + " SET next_val = ? WHERE sequence_name = ? AND next_val < ?",
+                        floor, DocumentContent.ID_GENERATOR_KEY, floor);
+            }
+            System.out.println("🔢 Content ID generator starts at or above " + floor);
+        } catch (Exception e) {
+            System.err.println("⚠️ Could not align content ID generator: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.smartstudy.config;
+
+import jakarta.annotation.PreDestroy;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.KeepOnlyLastCommitDeletionPolicy;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.index.SnapshotDeletionPolicy;
+import org.apache.lucene.store.FSDirectory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Registry of per-owner Lucene index partitions
+ *
+ * Each partition lives in its own directory under {@code lucene.partitioning.directory}
+ * with its own IndexWriter, so rebuilding or deleting one owner's data never touches the others.
+ */
+@Component
+public class IndexPartitionRegistry {
+
+    public static final String SHARED_PARTITION = "shared";
+
+    private static final String OWNER_PARTITION_PREFIX = "owner-";
+
+    @Autowired
+    private StandardAnalyzer analyzer;
+
+    @Autowired
+    private LuceneConfig luceneConfig;
+
+    @Value("${lucene.partitioning.directory:./lucene-partitions}")
+    private String partitionsDirectoryPath;
+
+    @Value("${lucene.partitioning.search-threads:0}")
+    private int searchThreads;
+
+    private final Map<String, Partition> partitions = new ConcurrentHashMap<>();
+
+    // Directories of partitions that are searched but have no writer open in this process
+    private final Map<String, FSDirectory> readDirectories = new ConcurrentHashMap<>();
+
+    // Opening a partition does disk I/O; a lock instead of synchronized keeps virtual threads unpinned
+    private final ReentrantLock openLock = new ReentrantLock();
+
+    private volatile ExecutorService searchExecutor;
+
+    /**
+     * Partition key for a document owner (null owners share one partition)
+     */
+    public static String partitionKey(Long ownerId) {
+        return ownerId != null ? OWNER_PARTITION_PREFIX + ownerId : SHARED_PARTITION;
+    }
+
+    /**
+     * Owner ID encoded in a partition key, or null for the shared partition
+     */
+    public static Long ownerIdOf(String partitionKey) {
+        if (partitionKey.startsWith(OWNER_PARTITION_PREFIX)) {
+            return Long.valueOf(partitionKey.substring(OWNER_PARTITION_PREFIX.length()));
+        }
+        return null;
+    }
+
+    /**
+     * Get (opening if needed) the writer for a partition
+     */
+    public IndexWriter writer(String partitionKey) throws IOException {
+        return partition(partitionKey).writer;
+    }
+
+    /**
+     * Get (opening if needed) the directory a partition's writer works on
+     */
+    public FSDirectory directory(String partitionKey) throws IOException {
+        return partition(partitionKey).directory;
+    }
+
+    /**
+     * Open one reader over the given partitions. Partitions without a commit yet are skipped.
+     */
+    public IndexReader openReader(Collection<String> partitionKeys) throws IOException {
+        List<IndexReader> readers = new ArrayList<>();
+        try {
+            for (String key : partitionKeys) {
+                checkPartitionKey(key);
+                if (!partitionPath(key).toFile().isDirectory()) {
+                    continue;
+                }
+                FSDirectory directory = readDirectory(key);
+                if (DirectoryReader.indexExists(directory)) {
+                    readers.add(DirectoryReader.open(directory));
+                }
+            }
+        } catch (IOException e) {
+            for (IndexReader reader : readers) {
+                reader.close();
+            }
+            throw e;
+        }
+        // MultiReader closes the sub-readers and aggregates term statistics, so scores stay comparable
+        return new MultiReader(readers.toArray(new IndexReader[0]), true);
+    }
+
+    /**
+     * All partition keys that exist on disk
+     */
+    public List<String> listPartitions() throws IOException {
+        TreeSet<String> keys = new TreeSet<>(partitions.keySet());
+        Path root = partitionsRoot();
+        if (Files.isDirectory(root)) {
+            try (Stream<Path> children = Files.list(root)) {
+                children.filter(Files::isDirectory).forEach(p -> keys.add(p.getFileName().toString()));
+            }
+        }
+        return new ArrayList<>(keys);
+    }
+
+    /**
+     * Commit every open partition writer
+     */
+    public void commitAll() throws IOException {
+        for (Partition partition : partitions.values()) {
+            partition.writer.commit();
+        }
+    }
+
+    /**
+     * Executor used to search partition slices in parallel
+     */
+    public ExecutorService searchExecutor() {
+        if (searchExecutor == null) {
+            synchronized (this) {
+                if (searchExecutor == null) {
+                    int threads = searchThreads > 0 ? searchThreads : Runtime.getRuntime().availableProcessors();
+                    searchExecutor = Executors.newFixedThreadPool(threads);
+                }
+            }
+        }
+        return searchExecutor;
+    }
+
+    /**
+     * Close partition writers, read-only directories and the search executor on shutdown
+     */
+    @PreDestroy
+    public void close() {
+        if (searchExecutor != null) {
+            searchExecutor.shutdown();
+        }
+        for (FSDirectory directory : readDirectories.values()) {
+            try {
+                directory.close();
+            } catch (IOException e) {
+                System.err.println("⚠️ Could not close index partition: " + e.getMessage());
+            }
+        }
+        readDirectories.clear();
+        for (Partition partition : partitions.values()) {
+            try {
+                partition.writer.close();
+                partition.directory.close();
+            } catch (IOException e) {
+                System.err.println("⚠️ Could not close index partition: " + e.getMessage());
+            }
+        }
+        partitions.clear();
+    }
+
+    private Partition partition(String partitionKey) throws IOException {
+        checkPartitionKey(partitionKey);
+        Partition partition = partitions.get(partitionKey);
+        if (partition == null) {
+            openLock.lock();
+            try {
+                partition = partitions.get(partitionKey);
+                if (partition == null) {
+                    partition = openPartition(partitionKey);
+                    partitions.put(partitionKey, partition);
+                }
+            } finally {
+                openLock.unlock();
+            }
+        }
+        return partition;
+    }
+
+    /**
+     * Directory to open a partition reader on: the writer's if the partition is open for writing,
+     * otherwise a plain directory, so searching a partition never creates an IndexWriter for it
+     */
+    private FSDirectory readDirectory(String partitionKey) throws IOException {
+        Partition partition = partitions.get(partitionKey);
+        if (partition != null) {
+            return partition.directory;
+        }
+        FSDirectory directory = readDirectories.get(partitionKey);
+        if (directory == null) {
+            openLock.lock();
+            try {
+                directory = readDirectories.get(partitionKey);
+                if (directory == null) {
+                    directory = FSDirectory.open(partitionPath(partitionKey));
+                    readDirectories.put(partitionKey, directory);
+                }
+            } finally {
+                openLock.unlock();
+            }
+        }
+        return directory;
+    }
+
+    private void checkPartitionKey(String partitionKey) {
+        if (!partitionKey.equals(SHARED_PARTITION) && !partitionKey.matches(OWNER_PARTITION_PREFIX + "\\d+")) {
+            throw new IllegalArgumentException("Invalid index partition: " + partitionKey);
+        }
+    }
+
+    private Partition openPartition(String partitionKey) throws IOException {
+        Path path = partitionPath(partitionKey);
+        Files.createDirectories(path);
+        System.out.println("🔍 Opening index partition: " + path.toAbsolutePath());
+
+        // Same merge throttling and policy as the unpartitioned index
+        FSDirectory directory = FSDirectory.open(path);
+        SnapshotDeletionPolicy deletionPolicy = new SnapshotDeletionPolicy(new KeepOnlyLastCommitDeletionPolicy());
+        return new Partition(directory, new IndexWriter(directory, luceneConfig.newIndexWriterConfig(analyzer, deletionPolicy)));
+    }
+
+    private Path partitionsRoot() {
+        return Paths.get(partitionsDirectoryPath);
+    }
+
+    private Path partitionPath(String partitionKey) {
+        return partitionsRoot().resolve(partitionKey);
+    }
+
+    private static class Partition {
+        private final FSDirectory directory;
+        private final IndexWriter writer;
+
+        private Partition(FSDirectory directory, IndexWriter writer) {
+            this.directory = directory;
+            this.writer = writer;
+        }
+    }
+}
@@ -1,10 +1,16 @@
 package com.smartstudy.config;
 
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.IndexDeletionPolicy;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.KeepOnlyLastCommitDeletionPolicy;
+import org.apache.lucene.index.SnapshotDeletionPolicy;
+import org.apache.lucene.index.TieredMergePolicy;
 import org.apache.lucene.store.FSDirectory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -22,6 +28,12 @@ public class LuceneConfig {
     @Value("${lucene.index.directory}")
     private String indexDirectoryPath;
     
+    @Value("${lucene.merge.force-merge-mb-per-sec:20}")
+    private double forceMergeMBPerSec;
+    
+    @Value("${lucene.merge.deletes-pct-allowed:20}")
+    private double deletesPctAllowed;
+    
     /**
      * Create Lucene analyzer bean
      */
@@ -45,13 +57,42 @@ public class LuceneConfig {
     }
     
     /**
-     * Create Lucene IndexWriter bean
+     * Deletion policy that lets commit points be pinned while they are copied to replicas
+     */
+    @Bean
+    public SnapshotDeletionPolicy snapshotDeletionPolicy() {
+        return new SnapshotDeletionPolicy(new KeepOnlyLastCommitDeletionPolicy());
+    }
+    
+    /**
+     * Create Lucene IndexWriter bean. Replica nodes never write, they only receive
+     * commit points copied from the primary, so they get no writer (and take no write lock).
      */
     @Bean
-    public IndexWriter indexWriter(FSDirectory directory, StandardAnalyzer analyzer) throws IOException {
+    @ConditionalOnExpression("'${lucene.replication.role:standalone}' != 'replica'")
+    public IndexWriter indexWriter(FSDirectory directory, StandardAnalyzer analyzer,
+                                   SnapshotDeletionPolicy snapshotDeletionPolicy) throws IOException {
+        return new IndexWriter(directory, newIndexWriterConfig(analyzer, snapshotDeletionPolicy));
+    }
+    
+    /**
+     * Writer settings shared by the index and its partitions
+     */
+    public IndexWriterConfig newIndexWriterConfig(StandardAnalyzer analyzer, IndexDeletionPolicy deletionPolicy) {
         IndexWriterConfig config = new IndexWriterConfig(analyzer);
         config.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+        config.setIndexDeletionPolicy(deletionPolicy);
+        
+        // Throttle merge I/O so maintenance merges don't starve searches and ingestion
+        ConcurrentMergeScheduler mergeScheduler = new ConcurrentMergeScheduler();
+        mergeScheduler.enableAutoIOThrottle();
+        mergeScheduler.setForceMergeMBPerSec(forceMergeMBPerSec);
+        config.setMergeScheduler(mergeScheduler);
         
-        return new IndexWriter(directory, config);
+        // Merge away segments with many deleted docs sooner than Lucene's default
+        TieredMergePolicy mergePolicy = new TieredMergePolicy();
+        mergePolicy.setDeletesPctAllowed(deletesPctAllowed);
+        config.setMergePolicy(mergePolicy);
+        return config;
     }
 }
@@ -0,0 +1,56 @@
+package com.smartstudy.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartstudy.dto.DocumentUploadResponse;
+import com.smartstudy.service.AuthService;
+import com.smartstudy.service.UploadAdmissionService;
+import com.smartstudy.service.UploadAdmissionService.AdmissionDecision;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * Rejects uploads with 429 and Retry-After while the ingestion pipeline is saturated
+ *
+ * Runs before the upload handler's arguments are resolved, so with lazy multipart resolution
+ * a rejected request body is never parsed or written to disk.
+ */
+@Component
+public class UploadAdmissionInterceptor implements HandlerInterceptor {
+
+    @Autowired
+    private UploadAdmissionService uploadAdmissionService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        if (!"POST".equalsIgnoreCase(request.getMethod())) {
+            return true;
+        }
+
+        HttpSession session = request.getSession(false);
+        Object uid = session != null ? session.getAttribute(AuthService.SESSION_USER_ID) : null;
+        Long ownerId = uid != null ? Long.valueOf(uid.toString()) : null;
+
+        AdmissionDecision decision = uploadAdmissionService.checkUpload(ownerId, request.getContentLengthLong());
+        if (decision.isAdmitted()) {
+            return true;
+        }
+
+        System.out.println("⏳ Upload deferred: " + decision.getReason() + " (retry after " + decision.getRetryAfterSeconds() + "s)");
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(decision.getRetryAfterSeconds()));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(),
+                new DocumentUploadResponse(decision.getReason() + ". Please retry in " + decision.getRetryAfterSeconds() + " seconds"));
+        return false;
+    }
+}
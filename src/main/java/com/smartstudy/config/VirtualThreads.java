@@ -0,0 +1,76 @@
+package com.smartstudy.config;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread factories for the application's own worker pools, following spring.threads.virtual.enabled
+ *
+ * Spring Boot moves Tomcat request handling onto virtual threads itself when the property is set
+ * and the JVM is 21 or newer. Pools that wait on the database, the index or the network use
+ * {@link #newThreadFactory(String)}, so they switch along with it while keeping their size (the
+ * size is what protects the resource behind them). CPU-bound pools keep platform threads. The
+ * application is compiled for Java 17, so the virtual thread builder is looked up reflectively and
+ * platform threads are used when it is missing.
+ */
+@Component
+public class VirtualThreads {
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean enabled;
+
+    private Method ofVirtualMethod;
+    private Method nameMethod;
+    private Method factoryMethod;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            nameMethod = builderClass.getMethod("name", String.class, long.class);
+            factoryMethod = builderClass.getMethod("factory");
+            ofVirtualMethod = Thread.class.getMethod("ofVirtual");
+            System.out.println("🧵 Virtual threads enabled for request handling and blocking ingestion and AI work");
+        } catch (ReflectiveOperationException e) {
+            ofVirtualMethod = null;
+            System.err.println("⚠️ spring.threads.virtual.enabled needs Java 21 or newer (running "
+                    + Runtime.version().feature() + "); using platform threads");
+        }
+    }
+
+    /**
+     * Whether blocking pools run on virtual threads
+     */
+    public boolean isActive() {
+        return ofVirtualMethod != null;
+    }
+
+    /**
+     * Factory for a pool of blocking workers: virtual threads when active, daemon platform threads otherwise
+     */
+    public ThreadFactory newThreadFactory(String namePrefix) {
+        if (ofVirtualMethod != null) {
+            try {
+                // Builders are not thread-safe, but a factory made from one is
+                Object builder = ofVirtualMethod.invoke(null);
+                return (ThreadFactory) factoryMethod.invoke(nameMethod.invoke(builder, namePrefix, 1L));
+            } catch (ReflectiveOperationException e) {
+                System.err.println("⚠️ Could not create virtual thread factory: " + e.getMessage());
+            }
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
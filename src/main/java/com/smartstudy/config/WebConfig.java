@@ -0,0 +1,22 @@
+package com.smartstudy.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Configuration class for Spring MVC interceptors
+ */
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    @Autowired
+    private UploadAdmissionInterceptor uploadAdmissionInterceptor;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(uploadAdmissionInterceptor)
+                .addPathPatterns("/api/documents/upload", "/api/documents/*/upload");
+    }
+}
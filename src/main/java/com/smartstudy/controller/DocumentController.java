@@ -5,6 +5,23 @@ import com.smartstudy.model.Document;
 import com.smartstudy.model.DocumentContent;
 import com.smartstudy.service.DocumentService;
 import com.smartstudy.service.AnalyticsService;
+import com.smartstudy.service.AuthService;
+import com.smartstudy.service.ChunkedUploadService;
+import com.smartstudy.service.ChunkedUploadService.ChunkIntegrityException;
+import com.smartstudy.service.ChunkedUploadService.UploadNotFoundException;
+import com.smartstudy.service.ChunkedUploadService.UploadSession;
+import com.smartstudy.service.IngestionExecutor;
+import com.smartstudy.service.IngestionJobService;
+import com.smartstudy.service.PdfMemoryBudget;
+import com.smartstudy.service.ContentChunker;
+import com.smartstudy.service.BoilerplateStripper;
+import com.smartstudy.service.ExtractionWorkerPool;
+import com.smartstudy.service.IngestionPipeline;
+import com.smartstudy.service.KeyphraseExtractor;
+import com.smartstudy.service.UploadAdmissionService;
+import com.smartstudy.service.UploadAdmissionService.AdmissionDecision;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpSession;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
@@ -18,7 +35,9 @@ import org.springframework.web.multipart.MultipartFile;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * REST controller for document management operations
@@ -34,12 +53,43 @@ public class DocumentController {
     @Autowired
     private AnalyticsService analyticsService;
     
+    @Autowired
+    private IngestionExecutor ingestionExecutor;
+    
+    @Autowired
+    private IngestionJobService ingestionJobService;
+    
+    @Autowired
+    private PdfMemoryBudget pdfMemoryBudget;
+    
+    @Autowired
+    private ContentChunker contentChunker;
+    
+    @Autowired
+    private BoilerplateStripper boilerplateStripper;
+    
+    @Autowired
+    private KeyphraseExtractor keyphraseExtractor;
+    
+    @Autowired
+    private IngestionPipeline ingestionPipeline;
+    
+    @Autowired
+    private ExtractionWorkerPool extractionWorkerPool;
+    
+    @Autowired
+    private ChunkedUploadService chunkedUploadService;
+    
+    @Autowired
+    private UploadAdmissionService uploadAdmissionService;
+    
     /**
      * Upload a ZIP file containing study materials
      */
     @PostMapping("/upload")
     public ResponseEntity<DocumentUploadResponse> uploadDocument(
-            @RequestParam("file") MultipartFile file) {
+            @RequestParam("file") MultipartFile file,
+            HttpServletRequest request) {
         
         try {
             System.out.println("📤 DocumentController.uploadDocument called");
@@ -63,7 +113,7 @@ public class DocumentController {
             }
             
             // Upload and process document
-            Document document = documentService.uploadDocument(file);
+            Document document = documentService.uploadDocument(file, currentUserId(request));
             
             DocumentUploadResponse response = new DocumentUploadResponse(
                 document, 
@@ -85,6 +135,177 @@ public class DocumentController {
         }
     }
     
+    /**
+     * Upload a new version of an existing document; only changed pages are re-indexed
+     */
+    @PostMapping("/{id}/upload")
+    public ResponseEntity<DocumentUploadResponse> updateDocument(
+            @PathVariable Long id,
+            @RequestParam("file") MultipartFile file) {
+        
+        try {
+            System.out.println("📤 DocumentController.updateDocument called for document " + id);
+            
+            if (file == null || file.isEmpty()) {
+                return ResponseEntity.badRequest()
+                    .body(new DocumentUploadResponse("File is empty"));
+            }
+            
+            Document document = documentService.updateDocumentFile(id, file);
+            return ResponseEntity.ok(new DocumentUploadResponse(
+                document,
+                "Document updated successfully and re-processing of changed content started"
+            ));
+            
+        } catch (IllegalArgumentException e) {
+            System.err.println("❌ Validation error: " + e.getMessage());
+            return ResponseEntity.badRequest()
+                .body(new DocumentUploadResponse("Validation error: " + e.getMessage()));
+        } catch (Exception e) {
+            System.err.println("❌ Update error: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(new DocumentUploadResponse("Error updating document: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * Start a chunked upload: {"filename", "size", "sha256" (optional)}; returns the upload ID and chunk size
+     */
+    @PostMapping("/uploads")
+    public ResponseEntity<Map<String, Object>> startChunkedUpload(@RequestBody Map<String, Object> body,
+                                                                  HttpServletRequest request) {
+        try {
+            String filename = body.get("filename") != null ? body.get("filename").toString() : null;
+            long size = body.get("size") instanceof Number number ? number.longValue() : -1;
+            String sha256 = body.get("sha256") != null ? body.get("sha256").toString() : null;
+            Long ownerId = currentUserId(request);
+            
+            // The whole file is admitted up front, so its chunks are never turned away halfway
+            AdmissionDecision decision = uploadAdmissionService.checkUpload(ownerId, size);
+            if (!decision.isAdmitted()) {
+                System.out.println("⏳ Chunked upload deferred: " + decision.getReason());
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(decision.getRetryAfterSeconds()))
+                    .body(errorBody(decision.getReason() + ". Please retry in " + decision.getRetryAfterSeconds() + " seconds"));
+            }
+            
+            UploadSession session = chunkedUploadService.start(filename, size, sha256, ownerId);
+            return ResponseEntity.status(HttpStatus.CREATED).body(uploadStatus(session));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(errorBody(e.getMessage()));
+        } catch (Exception e) {
+            System.err.println("❌ Chunked upload error: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorBody(e.getMessage()));
+        }
+    }
+    
+    /**
+     * Upload one chunk as the raw request body, written at the given byte offset
+     *
+     * An optional X-Chunk-SHA256 header is checked against the received bytes. A failed chunk
+     * (422) is simply sent again; chunks may be sent in any order.
+     */
+    @PutMapping("/uploads/{uploadId}")
+    public ResponseEntity<Map<String, Object>> uploadChunk(
+            @PathVariable String uploadId,
+            @RequestParam("offset") long offset,
+            @RequestHeader(value = "X-Chunk-SHA256", required = false) String chunkSha256,
+            HttpServletRequest request) {
+        try {
+            UploadSession session = chunkedUploadService.writeChunk(uploadId, currentUserId(request), offset,
+                    request.getContentLengthLong(), chunkSha256, request.getInputStream());
+            return ResponseEntity.ok(uploadStatus(session));
+        } catch (UploadNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(errorBody(e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(errorBody(e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(errorBody(e.getMessage()));
+        } catch (ChunkIntegrityException e) {
+            System.err.println("⚠️ " + e.getMessage());
+            return ResponseEntity.unprocessableEntity().body(errorBody(e.getMessage()));
+        } catch (Exception e) {
+            System.err.println("❌ Chunk upload error: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorBody(e.getMessage()));
+        }
+    }
+    
+    /**
+     * Get a chunked upload's progress, including the byte ranges still missing (to resume after a failure)
+     */
+    @GetMapping("/uploads/{uploadId}")
+    public ResponseEntity<Map<String, Object>> getChunkedUpload(@PathVariable String uploadId, HttpServletRequest request) {
+        try {
+            return ResponseEntity.ok(uploadStatus(chunkedUploadService.getUpload(uploadId, currentUserId(request))));
+        } catch (UploadNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(errorBody(e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorBody(e.getMessage()));
+        }
+    }
+    
+    /**
+     * Finish a chunked upload once every chunk has arrived; the file is then processed like any upload
+     */
+    @PostMapping("/uploads/{uploadId}/complete")
+    public ResponseEntity<DocumentUploadResponse> completeChunkedUpload(@PathVariable String uploadId,
+                                                                        HttpServletRequest request) {
+        try {
+            Document document = chunkedUploadService.complete(uploadId, currentUserId(request));
+            return ResponseEntity.ok(new DocumentUploadResponse(
+                document,
+                "Document uploaded successfully and processing started"
+            ));
+        } catch (UploadNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new DocumentUploadResponse(e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new DocumentUploadResponse("Validation error: " + e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(new DocumentUploadResponse(e.getMessage()));
+        } catch (ChunkIntegrityException e) {
+            System.err.println("⚠️ " + e.getMessage());
+            return ResponseEntity.unprocessableEntity().body(new DocumentUploadResponse(e.getMessage()));
+        } catch (Exception e) {
+            System.err.println("❌ Chunked upload error: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(new DocumentUploadResponse("Error uploading document: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * Cancel a chunked upload and delete what was received
+     */
+    @DeleteMapping("/uploads/{uploadId}")
+    public ResponseEntity<Void> cancelChunkedUpload(@PathVariable String uploadId, HttpServletRequest request) {
+        try {
+            chunkedUploadService.cancel(uploadId, currentUserId(request));
+            return ResponseEntity.noContent().build();
+        } catch (UploadNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+    
+    private Map<String, Object> uploadStatus(UploadSession session) {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("uploadId", session.getUploadId());
+        status.put("filename", session.getFilename());
+        status.put("size", session.getSize());
+        status.put("receivedBytes", session.getReceivedBytes());
+        status.put("nextOffset", session.getNextOffset());
+        status.put("missingRanges", session.getMissingRanges());
+        status.put("chunkSize", chunkedUploadService.getChunkSize());
+        return status;
+    }
+    
+    private Map<String, Object> errorBody(String message) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("success", false);
+        body.put("message", message);
+        return body;
+    }
+    
     /**
      * View file inline by document ID
      */
@@ -238,6 +459,23 @@ public class DocumentController {
         }
     }
     
+    /**
+     * Get ingestion queue depth, active workers, wait times, job table counts and PDF memory use
+     */
+    @GetMapping("/ingestion/stats")
+    public ResponseEntity<Map<String, Object>> getIngestionStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(ingestionExecutor.getStats());
+        stats.put("pipeline", ingestionPipeline.getStats());
+        stats.put("jobs", ingestionJobService.getStats());
+        stats.put("pdfMemory", pdfMemoryBudget.getStats());
+        stats.put("isolation", extractionWorkerPool.getStats());
+        stats.put("chunkedUploads", chunkedUploadService.getStats());
+        stats.put("chunking", contentChunker.getStats());
+        stats.put("boilerplate", boilerplateStripper.getStats());
+        stats.put("keyphrases", keyphraseExtractor.getStats());
+        return ResponseEntity.ok(stats);
+    }
+    
     /**
      * Get document content by document ID
      */
@@ -256,6 +494,15 @@ public class DocumentController {
         }
     }
     
+    /**
+     * ID of the logged-in user, or null for anonymous requests
+     */
+    private Long currentUserId(HttpServletRequest request) {
+        HttpSession session = request.getSession(false);
+        Object uid = session != null ? session.getAttribute(AuthService.SESSION_USER_ID) : null;
+        return uid != null ? Long.valueOf(uid.toString()) : null;
+    }
+    
     /**
      * Health check endpoint
      */
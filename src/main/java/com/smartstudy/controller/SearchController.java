@@ -1,11 +1,19 @@
 package com.smartstudy.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.smartstudy.service.SearchService;
 import com.smartstudy.service.AnalyticsService;
+import com.smartstudy.service.AuthService;
+import com.smartstudy.service.IndexMaintenanceService;
+import com.smartstudy.service.IndexReplicationService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpSession;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -23,17 +31,37 @@ public class SearchController {
     @Autowired
     private AnalyticsService analyticsService;
     
+    @Autowired
+    private IndexMaintenanceService indexMaintenanceService;
+    
+    @Autowired
+    private IndexReplicationService indexReplicationService;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    private static final String ADMIN_ROLE = "ADMIN";
+    
     /**
      * Basic search endpoint
      */
     @GetMapping
-    public ResponseEntity<List<SearchService.SearchResult>> search(
+    public ResponseEntity<?> search(
             @RequestParam("q") String query,
-            @RequestParam(value = "maxResults", defaultValue = "20") int maxResults) {
+            @RequestParam(value = "maxResults", defaultValue = "20") int maxResults,
+            @RequestParam(value = "profile", defaultValue = "false") boolean profile,
+            HttpServletRequest request) {
         
         try {
             try { analyticsService.incrementSearchCount(); } catch (Exception ignore) {}
-            List<SearchService.SearchResult> results = searchService.search(query, maxResults);
+            if (profile) {
+                if (!request.isUserInRole(ADMIN_ROLE)) {
+                    return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                            .body(Map.of("error", "Search profiling is restricted to administrators"));
+                }
+                return ResponseEntity.ok(withSerializationTime(searchService.profileSearch(query, maxResults, currentUserId(request))));
+            }
+            List<SearchService.SearchResult> results = searchService.searchForUser(query, maxResults, currentUserId(request));
             return ResponseEntity.ok(results);
         } catch (Exception e) {
             return ResponseEntity.internalServerError().build();
@@ -44,21 +72,55 @@ public class SearchController {
      * Advanced search with filters
      */
     @GetMapping("/advanced")
-    public ResponseEntity<List<SearchService.SearchResult>> advancedSearch(
+    public ResponseEntity<?> advancedSearch(
             @RequestParam("q") String query,
             @RequestParam(value = "filename", required = false) String filename,
             @RequestParam(value = "topic", required = false) String topic,
-            @RequestParam(value = "maxResults", defaultValue = "20") int maxResults) {
+            @RequestParam(value = "maxResults", defaultValue = "20") int maxResults,
+            @RequestParam(value = "profile", defaultValue = "false") boolean profile,
+            HttpServletRequest request) {
         
         try {
             try { analyticsService.incrementSearchCount(); } catch (Exception ignore) {}
-            List<SearchService.SearchResult> results = searchService.searchWithFilters(query, filename, topic, maxResults);
+            if (profile) {
+                if (!request.isUserInRole(ADMIN_ROLE)) {
+                    return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                            .body(Map.of("error", "Search profiling is restricted to administrators"));
+                }
+                return ResponseEntity.ok(withSerializationTime(
+                        searchService.profileSearchWithFilters(query, filename, topic, maxResults, currentUserId(request))));
+            }
+            List<SearchService.SearchResult> results = searchService.searchWithFiltersForUser(
+                    query, filename, topic, maxResults, currentUserId(request));
             return ResponseEntity.ok(results);
         } catch (Exception e) {
             return ResponseEntity.internalServerError().build();
         }
     }
     
+    /**
+     * ID of the logged-in user, or null for anonymous requests
+     */
+    private Long currentUserId(HttpServletRequest request) {
+        HttpSession session = request.getSession(false);
+        Object uid = session != null ? session.getAttribute(AuthService.SESSION_USER_ID) : null;
+        return uid != null ? Long.valueOf(uid.toString()) : null;
+    }
+    
+    /**
+     * Measure result serialization and wrap results and profile into one response body
+     */
+    private Map<String, Object> withSerializationTime(SearchService.SearchProfile profile) throws Exception {
+        long start = System.nanoTime();
+        objectMapper.writeValueAsBytes(profile.getResults());
+        profile.setSerializationTimeNanos(System.nanoTime() - start);
+        
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("results", profile.getResults());
+        body.put("profile", profile);
+        return body;
+    }
+    
     /**
      * Get search suggestions
      */
@@ -117,6 +179,62 @@ public class SearchController {
         }
     }
     
+    /**
+     * Rebuild one index partition (administrators only)
+     */
+    @PostMapping("/reindex/partition/{partition}")
+    public ResponseEntity<String> rebuildPartition(@PathVariable String partition, HttpServletRequest request) {
+        if (!request.isUserInRole(ADMIN_ROLE)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body("Rebuilding index partitions is restricted to administrators");
+        }
+        try {
+            searchService.rebuildPartition(partition);
+            return ResponseEntity.ok("Partition " + partition + " reindexed successfully");
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError()
+                    .body("Error reindexing partition: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Get index segment health and the last maintenance run
+     */
+    @GetMapping("/maintenance")
+    public ResponseEntity<Map<String, Object>> getMaintenanceStatus() {
+        try {
+            return ResponseEntity.ok(indexMaintenanceService.getMaintenanceStatus());
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+    
+    /**
+     * Run index maintenance now instead of waiting for the scheduled window (administrators only)
+     */
+    @PostMapping("/maintenance")
+    public ResponseEntity<Map<String, Object>> runMaintenance(
+            @RequestParam(value = "force", defaultValue = "false") boolean force,
+            HttpServletRequest request) {
+        if (!request.isUserInRole(ADMIN_ROLE)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(Map.of("error", "Index maintenance is restricted to administrators"));
+        }
+        try {
+            return ResponseEntity.ok(indexMaintenanceService.runMaintenance(force));
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+    
+    /**
+     * Get index replication role and progress
+     */
+    @GetMapping("/replication")
+    public ResponseEntity<Map<String, Object>> getReplicationStatus() {
+        return ResponseEntity.ok(indexReplicationService.getReplicationStatus());
+    }
+    
     /**
      * Health check for search service
      */
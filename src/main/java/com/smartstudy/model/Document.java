@@ -7,7 +7,7 @@ import java.time.LocalDateTime;
  * Entity class representing a document in the SmartStudy system
  */
 @Entity
-@Table(name = "documents")
+@Table(name = "documents", indexes = @Index(name = "idx_documents_file_hash", columnList = "file_hash"))
 public class Document {
     
     @Id
@@ -39,6 +39,20 @@ public class Document {
     @Column(name = "content_summary", columnDefinition = "TEXT")
     private String contentSummary;
     
+    @Column(name = "owner_id")
+    private Long ownerId;
+    
+    @Column(name = "file_hash", length = 64)
+    private String fileHash;
+    
+    // Detected from the file's bytes at upload
+    @Column(name = "content_type", length = 100)
+    private String contentType;
+    
+    // Top keyphrases across the document's blocks, best first, separated by ", "
+    @Column(name = "keyphrases", length = 1000)
+    private String keyphrases;
+    
     // Constructors
     public Document() {
         this.uploadDate = LocalDateTime.now();
@@ -126,6 +140,38 @@ public class Document {
         this.contentSummary = contentSummary;
     }
     
+    public Long getOwnerId() {
+        return ownerId;
+    }
+    
+    public void setOwnerId(Long ownerId) {
+        this.ownerId = ownerId;
+    }
+    
+    public String getFileHash() {
+        return fileHash;
+    }
+    
+    public void setFileHash(String fileHash) {
+        this.fileHash = fileHash;
+    }
+    
+    public String getContentType() {
+        return contentType;
+    }
+    
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+    
+    public String getKeyphrases() {
+        return keyphrases;
+    }
+    
+    public void setKeyphrases(String keyphrases) {
+        this.keyphrases = keyphrases;
+    }
+    
     @Override
     public String toString() {
         return "Document{" +
@@ -145,7 +191,16 @@ public class Document {
     public enum DocumentStatus {
         PROCESSING,
         COMPLETED,
-        FAILED
+        // Processing hit a time limit or skipped archive entries; the content that was extracted is usable
+        PARTIAL,
+        FAILED;
+        
+        /**
+         * Whether the document's extracted content can be searched and used
+         */
+        public boolean hasContent() {
+            return this == COMPLETED || this == PARTIAL;
+        }
     }
 }
 
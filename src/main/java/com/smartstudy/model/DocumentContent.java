@@ -11,8 +11,15 @@ import java.time.LocalDateTime;
 @Table(name = "document_content")
 public class DocumentContent {
     
+    public static final String ID_GENERATOR_TABLE = "id_generator";
+    public static final String ID_GENERATOR_KEY = "document_content";
+    public static final int ID_ALLOCATION_SIZE = 50;
+    
+    // Table-generated IDs (allocated in blocks) instead of IDENTITY, so Hibernate can batch inserts
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "document_content_id")
+    @TableGenerator(name = "document_content_id", table = ID_GENERATOR_TABLE, pkColumnName = "sequence_name",
+            valueColumnName = "next_val", pkColumnValue = ID_GENERATOR_KEY, allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
     
     @ManyToOne(fetch = FetchType.LAZY)
@@ -44,6 +51,10 @@ public class DocumentContent {
     @Column(name = "word_count")
     private Integer wordCount;
     
+    // Top keyphrases of the block, best first, separated by ", "
+    @Column(name = "keyphrases", length = 500)
+    private String keyphrases;
+    
     // Constructors
     public DocumentContent() {
         this.createdAt = LocalDateTime.now();
@@ -140,6 +151,14 @@ public class DocumentContent {
         this.wordCount = wordCount;
     }
     
+    public String getKeyphrases() {
+        return keyphrases;
+    }
+    
+    public void setKeyphrases(String keyphrases) {
+        this.keyphrases = keyphrases;
+    }
+    
     /**
      * Get the document ID without triggering lazy loading
      */
@@ -0,0 +1,116 @@
+package com.smartstudy.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Entity class representing the persistent ingestion job of a document
+ *
+ * A worker claims a job by taking a lease on it; if the worker's node dies the lease
+ * expires and another worker resumes the job from its last checkpoint.
+ */
+@Entity
+@Table(name = "ingestion_jobs", indexes = @Index(name = "idx_ingestion_jobs_state", columnList = "state, lease_expires_at"))
+public class IngestionJob {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "document_id", nullable = false, unique = true)
+    private Long documentId;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "job_type", nullable = false)
+    private JobType jobType;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "state", nullable = false)
+    private JobState state;
+    
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+    
+    @Column(name = "lease_owner")
+    private String leaseOwner;
+    
+    @Column(name = "lease_token")
+    private String leaseToken;
+    
+    @Column(name = "lease_expires_at")
+    private LocalDateTime leaseExpiresAt;
+    
+    @Column(name = "last_completed_page")
+    private Integer lastCompletedPage;
+    
+    @Column(name = "last_error", columnDefinition = "TEXT")
+    private String lastError;
+    
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+    
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+    
+    // Constructors
+    public IngestionJob() {
+        this.createdAt = LocalDateTime.now();
+        this.updatedAt = this.createdAt;
+        this.state = JobState.QUEUED;
+    }
+    
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    
+    public Long getDocumentId() { return documentId; }
+    public void setDocumentId(Long documentId) { this.documentId = documentId; }
+    
+    public JobType getJobType() { return jobType; }
+    public void setJobType(JobType jobType) { this.jobType = jobType; }
+    
+    public JobState getState() { return state; }
+    public void setState(JobState state) { this.state = state; }
+    
+    public int getAttempts() { return attempts; }
+    public void setAttempts(int attempts) { this.attempts = attempts; }
+    
+    public String getLeaseOwner() { return leaseOwner; }
+    public void setLeaseOwner(String leaseOwner) { this.leaseOwner = leaseOwner; }
+    
+    public String getLeaseToken() { return leaseToken; }
+    public void setLeaseToken(String leaseToken) { this.leaseToken = leaseToken; }
+    
+    public LocalDateTime getLeaseExpiresAt() { return leaseExpiresAt; }
+    public void setLeaseExpiresAt(LocalDateTime leaseExpiresAt) { this.leaseExpiresAt = leaseExpiresAt; }
+    
+    public Integer getLastCompletedPage() { return lastCompletedPage; }
+    public void setLastCompletedPage(Integer lastCompletedPage) { this.lastCompletedPage = lastCompletedPage; }
+    
+    public String getLastError() { return lastError; }
+    public void setLastError(String lastError) { this.lastError = lastError; }
+    
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+    
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+    
+    /**
+     * Enum for the kind of work a job does
+     */
+    public enum JobType {
+        PROCESS,
+        REPROCESS
+    }
+    
+    /**
+     * Enum for job lifecycle states
+     */
+    public enum JobState {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+}
@@ -1,10 +1,14 @@
 package com.smartstudy.repository;
 
 import com.smartstudy.model.DocumentContent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 
@@ -19,6 +23,11 @@ public interface DocumentContentRepository extends JpaRepository<DocumentContent
      */
     List<DocumentContent> findByDocument_IdOrderByPageNumberAscSlideNumberAsc(Long documentId);
     
+    /**
+     * Find one page of a document's content in insertion order
+     */
+    Slice<DocumentContent> findByDocument_IdOrderByIdAsc(Long documentId, Pageable pageable);
+    
     /**
      * Find content by document ID and page number
      */
@@ -92,6 +101,14 @@ public interface DocumentContentRepository extends JpaRepository<DocumentContent
     @Query("SELECT dc FROM DocumentContent dc WHERE dc.document.id = :documentId ORDER BY dc.wordCount DESC")
     List<DocumentContent> findTopContentByWordCount(@Param("documentId") Long documentId);
     
+    /**
+     * Delete a document's content after the given page (and any content without a page number)
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM DocumentContent dc WHERE dc.document.id = :documentId AND (dc.pageNumber IS NULL OR dc.pageNumber > :afterPage)")
+    int deleteByDocumentIdAfterPage(@Param("documentId") Long documentId, @Param("afterPage") int afterPage);
+    
     /**
      * Delete all content for a specific document
      */
@@ -67,7 +67,7 @@ public interface DocumentRepository extends JpaRepository<Document, Long> {
     /**
      * Get total file size of all documents
      */
-    @Query("SELECT SUM(d.fileSize) FROM Document d WHERE d.status = 'COMPLETED'")
+    @Query("SELECT SUM(d.fileSize) FROM Document d WHERE d.status IN ('COMPLETED', 'PARTIAL')")
     Long getTotalFileSize();
     
     /**
@@ -76,6 +76,36 @@ public interface DocumentRepository extends JpaRepository<Document, Long> {
     @Query("SELECT d FROM Document d WHERE d.fileType IN :fileTypes")
     List<Document> findByFileTypes(@Param("fileTypes") List<String> fileTypes);
     
+    /**
+     * Find documents uploaded by a specific user
+     */
+    List<Document> findByOwnerId(Long ownerId);
+    
+    /**
+     * Count a user's documents in a given status
+     */
+    long countByOwnerIdAndStatus(Long ownerId, DocumentStatus status);
+    
+    /**
+     * Find documents without an owner (shared content)
+     */
+    List<Document> findByOwnerIdIsNull();
+    
+    /**
+     * Find the oldest document with the given file hash (SHA-256 of the uploaded bytes)
+     */
+    Optional<Document> findFirstByFileHashOrderByIdAsc(String fileHash);
+    
+    /**
+     * Find the oldest other document with the given file hash in a given status
+     */
+    Optional<Document> findFirstByFileHashAndStatusAndIdNotOrderByIdAsc(String fileHash, DocumentStatus status, Long id);
+    
+    /**
+     * Count documents stored at a given path (identical uploads share one file)
+     */
+    long countByFilePath(String filePath);
+    
     /**
      * Find documents with processing errors (status = FAILED)
      */
@@ -0,0 +1,72 @@
+package com.smartstudy.repository;
+
+import com.smartstudy.model.IngestionJob;
+import com.smartstudy.model.IngestionJob.JobState;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository interface for IngestionJob entity operations
+ */
+@Repository
+public interface IngestionJobRepository extends JpaRepository<IngestionJob, Long> {
+    
+    /**
+     * Find the job of a document
+     */
+    Optional<IngestionJob> findByDocumentId(Long documentId);
+    
+    /**
+     * Lock jobs that are queued or whose lease has expired, skipping rows other nodes are claiming
+     * (lock timeout -2 is Hibernate's SKIP LOCKED)
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT j FROM IngestionJob j WHERE j.state = 'QUEUED' OR (j.state = 'RUNNING' AND j.leaseExpiresAt < :now) ORDER BY j.id")
+    List<IngestionJob> findClaimable(@Param("now") LocalDateTime now, Pageable pageable);
+    
+    /**
+     * Extend the leases this node still holds
+     */
+    @Modifying
+    @Query("UPDATE IngestionJob j SET j.leaseExpiresAt = :expiresAt WHERE j.leaseToken IN :tokens AND j.state = 'RUNNING'")
+    int renewLeases(@Param("tokens") Collection<String> tokens, @Param("expiresAt") LocalDateTime expiresAt);
+    
+    /**
+     * Record the last page whose content is persisted, if the lease is still held
+     */
+    @Modifying
+    @Query("UPDATE IngestionJob j SET j.lastCompletedPage = :page, j.updatedAt = :now WHERE j.id = :id AND j.leaseToken = :token AND j.state = 'RUNNING'")
+    int checkpoint(@Param("id") Long id, @Param("token") String token, @Param("page") Integer page, @Param("now") LocalDateTime now);
+    
+    /**
+     * Find documents' IDs that have a job
+     */
+    @Query("SELECT j.documentId FROM IngestionJob j")
+    List<Long> findAllDocumentIds();
+    
+    /**
+     * Count jobs by state
+     */
+    long countByState(JobState state);
+    
+    /**
+     * Delete the job of a document
+     */
+    @Modifying
+    @Query("DELETE FROM IngestionJob j WHERE j.documentId = :documentId")
+    int deleteByDocumentId(@Param("documentId") Long documentId);
+}
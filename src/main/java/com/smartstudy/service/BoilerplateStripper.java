@@ -0,0 +1,229 @@
+package com.smartstudy.service;
+
+import com.smartstudy.model.DocumentContent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Removes running headers, footers and page numbers from paged content before it is persisted
+ *
+ * A line near the top or bottom of a page counts as boilerplate once the same line (with digits
+ * ignored, so "Page 3 of 40" matches "Page 4 of 40") sits in the same position on enough pages.
+ * The first pages of a document are held back until the repeating lines are known; after that
+ * pages stream through and the counts keep being updated. Blocks without a page number (Word,
+ * Tika, archives) have no running headers and are never held back.
+ */
+@Component
+public class BoilerplateStripper {
+
+    private static final int MAX_LINE_CHARS = 200;
+
+    // Blocks held back during warm-up, whatever the page count, so memory stays bounded
+    private static final int MAX_HELD_BLOCKS = 256;
+
+    @Value("${ingestion.boilerplate.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ingestion.boilerplate.edge-lines:3}")
+    private int edgeLines;
+
+    @Value("${ingestion.boilerplate.warmup-pages:8}")
+    private int warmupPages;
+
+    @Value("${ingestion.boilerplate.min-pages:3}")
+    private int minPages;
+
+    @Value("${ingestion.boilerplate.min-page-fraction:0.4}")
+    private double minPageFraction;
+
+    private final AtomicLong pagesScanned = new AtomicLong();
+    private final AtomicLong linesRemoved = new AtomicLong();
+    private final AtomicLong charsRemoved = new AtomicLong();
+
+    /**
+     * Open a stripping stage for one document in front of a sink; call {@link Stage#finish()} after the last block
+     */
+    public Stage open(Consumer<DocumentContent> downstream) {
+        return new Stage(downstream);
+    }
+
+    /**
+     * Get boilerplate removal statistics
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("pagesScanned", pagesScanned.get());
+        stats.put("linesRemoved", linesRemoved.get());
+        stats.put("charsRemoved", charsRemoved.get());
+        return stats;
+    }
+
+    /**
+     * Stripping stage for one document; not thread-safe
+     */
+    public class Stage implements Consumer<DocumentContent> {
+        private final Consumer<DocumentContent> downstream;
+        private final Map<String, Integer> pageCounts = new HashMap<>();
+        private final List<DocumentContent> heldBack = new ArrayList<>();
+        private int pagesSeen;
+        private int pagesArrived;
+        private Integer lastPage;
+        private boolean warmedUp;
+        private long removedLines;
+        private long removedChars;
+
+        private Stage(Consumer<DocumentContent> downstream) {
+            this.downstream = downstream;
+        }
+
+        @Override
+        public void accept(DocumentContent content) {
+            if (!enabled || (content.getPageNumber() == null && heldBack.isEmpty())) {
+                downstream.accept(content);
+                return;
+            }
+            // Only page text has running headers; placeholders for empty or failed pages pass untouched
+            boolean pageText = content.getPageNumber() != null && !content.getContent().startsWith("[Page ");
+            if (pageText) {
+                learn(content.getContent());
+            }
+            if (content.getPageNumber() != null && !content.getPageNumber().equals(lastPage)) {
+                // Placeholders count toward the warm-up too, so a run of blank pages isn't held back
+                pagesArrived++;
+                lastPage = content.getPageNumber();
+            }
+            if (!warmedUp) {
+                heldBack.add(content);
+                if (pagesArrived >= warmupPages || heldBack.size() >= MAX_HELD_BLOCKS) {
+                    releaseHeldBack();
+                }
+                return;
+            }
+            if (pageText) {
+                strip(content);
+            }
+            downstream.accept(content);
+        }
+
+        /**
+         * Hand on any pages still held back
+         */
+        public void finish() {
+            if (enabled) {
+                releaseHeldBack();
+            }
+        }
+
+        public long getRemovedLines() { return removedLines; }
+
+        public long getRemovedChars() { return removedChars; }
+
+        private void releaseHeldBack() {
+            warmedUp = true;
+            for (DocumentContent content : heldBack) {
+                if (content.getPageNumber() != null && !content.getContent().startsWith("[Page ")) {
+                    strip(content);
+                }
+                downstream.accept(content);
+            }
+            heldBack.clear();
+        }
+
+        private void learn(String text) {
+            pagesSeen++;
+            pagesScanned.incrementAndGet();
+            List<String> lines = nonBlankLines(text);
+            // Count each line at most once per page
+            Set<String> keys = new HashSet<>();
+            for (int i = 0; i < lines.size(); i++) {
+                keys.addAll(positionKeys(lines.get(i), i, lines.size()));
+            }
+            for (String key : keys) {
+                pageCounts.merge(key, 1, Integer::sum);
+            }
+        }
+
+        private void strip(DocumentContent content) {
+            String[] lines = content.getContent().split("\n");
+            int total = 0;
+            for (String line : lines) {
+                if (!line.isBlank()) {
+                    total++;
+                }
+            }
+
+            StringBuilder kept = new StringBuilder();
+            int index = 0;
+            int removed = 0;
+            for (String line : lines) {
+                if (line.isBlank()) {
+                    kept.append(line).append('\n');
+                    continue;
+                }
+                if (positionKeys(line, index++, total).stream().anyMatch(this::isBoilerplate)) {
+                    removed++;
+                    removedChars += line.length();
+                    charsRemoved.addAndGet(line.length());
+                } else {
+                    kept.append(line).append('\n');
+                }
+            }
+            if (removed == 0) {
+                return;
+            }
+            removedLines += removed;
+            linesRemoved.addAndGet(removed);
+
+            String text = kept.toString().trim();
+            content.setContent(text.isEmpty() ? "[Page " + content.getPageNumber() + " - No text content]" : text);
+        }
+
+        private boolean isBoilerplate(String key) {
+            int pages = pageCounts.getOrDefault(key, 0);
+            return pages >= Math.max(2, minPages) && pages >= minPageFraction * pagesSeen;
+        }
+
+        /**
+         * Keys of a line for the top and/or bottom band of a page it sits in (none for lines in the body)
+         *
+         * On short pages a line can be in both bands, so it is counted for both.
+         */
+        private List<String> positionKeys(String line, int index, int lineCount) {
+            List<String> keys = new ArrayList<>(2);
+            String trimmed = line.trim();
+            if (trimmed.length() > MAX_LINE_CHARS) {
+                return keys;
+            }
+            String normalized = trimmed.toLowerCase(Locale.ROOT).replaceAll("\\d+", "#").replaceAll("\\s+", " ");
+            if (index < edgeLines) {
+                keys.add("top|" + normalized);
+            }
+            if (index >= lineCount - edgeLines) {
+                keys.add("bottom|" + normalized);
+            }
+            return keys;
+        }
+
+        private List<String> nonBlankLines(String text) {
+            List<String> lines = new ArrayList<>();
+            for (String line : text.split("\n")) {
+                if (!line.isBlank()) {
+                    lines.add(line);
+                }
+            }
+            return lines;
+        }
+    }
+}
@@ -0,0 +1,579 @@
+package com.smartstudy.service;
+
+import com.smartstudy.model.Document;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Service for resumable uploads sent in chunks: init, put chunks by offset, complete
+ *
+ * Each chunk is streamed from the request straight into the partial file at its offset, so chunks
+ * may arrive out of order, in parallel or again after a failed attempt, and no upload is ever held
+ * in memory. A chunk only counts as received once all its bytes are written and, if the client sent
+ * one, its SHA-256 matches. Completing checks that every byte arrived and the whole file's SHA-256,
+ * then hands the file to the normal upload path. Upload state is kept in a small file next to the
+ * partial file, so uploads survive a restart; abandoned uploads are deleted after a while.
+ */
+@Service
+public class ChunkedUploadService {
+
+    private static final long MB = 1024 * 1024;
+    private static final int COPY_BUFFER_BYTES = 64 * 1024;
+    private static final String DATA_SUFFIX = ".part";
+    private static final String STATE_SUFFIX = ".upload";
+
+    @Autowired
+    private DocumentService documentService;
+
+    @Value("${file.upload.directory}")
+    private String uploadDirectory;
+
+    @Value("${upload.chunked.directory:}")
+    private String chunkedDirectory;
+
+    @Value("${upload.chunked.chunk-size-mb:5}")
+    private long chunkSizeMb;
+
+    @Value("${upload.chunked.max-chunk-size-mb:16}")
+    private long maxChunkSizeMb;
+
+    @Value("${upload.chunked.expire-hours:24}")
+    private long expireHours;
+
+    private Path partialDirectory;
+
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+    private final AtomicLong startedUploads = new AtomicLong();
+    private final AtomicLong completedUploads = new AtomicLong();
+    private final AtomicLong receivedChunks = new AtomicLong();
+    private final AtomicLong rejectedChunks = new AtomicLong();
+    private final AtomicLong receivedBytes = new AtomicLong();
+    private final AtomicLong expiredUploads = new AtomicLong();
+
+    @PostConstruct
+    public void init() throws IOException {
+        // Next to the upload directory by default, so completing an upload is a rename
+        partialDirectory = chunkedDirectory != null && !chunkedDirectory.isBlank()
+                ? Paths.get(chunkedDirectory)
+                : Paths.get(uploadDirectory).resolve(".partial");
+        Files.createDirectories(partialDirectory);
+    }
+
+    /**
+     * Start an upload
+     *
+     * @param sha256 hex SHA-256 of the whole file, checked on completion (optional)
+     */
+    public UploadSession start(String filename, long size, String sha256, Long ownerId) throws IOException {
+        if (filename == null || filename.trim().isEmpty()) {
+            throw new IllegalArgumentException("Invalid filename");
+        }
+        if (size <= 0) {
+            throw new IllegalArgumentException("File is empty");
+        }
+        if (size > DocumentService.MAX_FILE_SIZE) {
+            throw new IllegalArgumentException("File size too large. Maximum allowed: 100MB");
+        }
+        if (sha256 != null && !sha256.isBlank() && !sha256.trim().matches("(?i)[0-9a-f]{64}")) {
+            throw new IllegalArgumentException("sha256 must be 64 hex characters");
+        }
+
+        // Only the name; a client-supplied path must not reach the file system
+        String name = Paths.get(filename.trim().replace('\\', '/')).getFileName().toString();
+        UploadSession session = new UploadSession(UUID.randomUUID().toString(), name, size,
+                sha256 != null && !sha256.isBlank() ? sha256.trim().toLowerCase() : null, ownerId);
+        // Empty for now; chunks are written at their offsets
+        Files.createFile(dataFile(session.uploadId));
+        saveState(session);
+        sessions.put(session.uploadId, session);
+        startedUploads.incrementAndGet();
+        System.out.println("📦 Started chunked upload " + session.uploadId + " for " + session.filename
+                + " (" + size + " bytes)");
+        return session;
+    }
+
+    /**
+     * Write one chunk at the given offset, streaming it from the request body
+     *
+     * @param length      chunk length announced by the client (Content-Length), or -1 if unknown
+     * @param chunkSha256 hex SHA-256 of the chunk, or null to skip the check
+     */
+    public UploadSession writeChunk(String uploadId, Long ownerId, long offset, long length, String chunkSha256,
+                                    InputStream body) throws IOException {
+        UploadSession session = getSession(uploadId, ownerId);
+        long maxChunkBytes = maxChunkSizeMb * MB;
+        if (offset < 0 || offset >= session.size) {
+            throw new IllegalArgumentException("Offset " + offset + " is outside the file (" + session.size + " bytes)");
+        }
+        if (length > maxChunkBytes) {
+            throw new IllegalArgumentException("Chunk too large. Maximum allowed: " + maxChunkSizeMb + "MB");
+        }
+        if (length >= 0 && offset + length > session.size) {
+            throw new IllegalArgumentException("Chunk ends after the end of the file (" + session.size + " bytes)");
+        }
+
+        MessageDigest digest = sha256();
+        // A chunk that continues the file in order also extends the whole-file scan, so completing
+        // doesn't have to read the file again
+        UploadScan continuedScan;
+        session.lock.lock();
+        try {
+            // Completing reads the file as it stands, so it waits for chunks in flight and refuses new ones
+            if (session.completing) {
+                throw new IllegalStateException("Upload " + uploadId + " is being completed; no more chunks are accepted");
+            }
+            session.chunksInFlight++;
+            continuedScan = session.scan != null && session.scan.size() == offset ? session.scan.copy() : null;
+        } finally {
+            session.lock.unlock();
+        }
+        long written = 0;
+        long limit = Math.min(maxChunkBytes, session.size - offset);
+        byte[] buffer = new byte[COPY_BUFFER_BYTES];
+        try (FileChannel channel = FileChannel.open(dataFile(uploadId), StandardOpenOption.WRITE)) {
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                if (written + read > limit) {
+                    throw new IllegalArgumentException("Chunk at offset " + offset + " is longer than "
+                            + (limit == maxChunkBytes ? "the maximum chunk size" : "the rest of the file"));
+                }
+                digest.update(buffer, 0, read);
+                if (continuedScan != null) {
+                    continuedScan.update(buffer, 0, read);
+                }
+                // Positional writes, so parallel chunks go to the file side by side without locking
+                ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, read);
+                while (bytes.hasRemaining()) {
+                    written += channel.write(bytes, offset + written);
+                }
+            }
+            if (written == 0 || (length >= 0 && written != length)) {
+                throw new ChunkIntegrityException("Chunk at offset " + offset + " was cut short (" + written + " of "
+                        + (length >= 0 ? length : "?") + " bytes); send it again");
+            }
+            if (chunkSha256 != null && !chunkSha256.isBlank()
+                    && !HexFormat.of().formatHex(digest.digest()).equalsIgnoreCase(chunkSha256.trim())) {
+                throw new ChunkIntegrityException("Chunk at offset " + offset + " does not match its SHA-256; send it again");
+            }
+
+            // Recorded before the chunk stops counting as in flight, so completing never misses it
+            session.lock.lock();
+            try {
+                session.addRange(offset, offset + written);
+                if (continuedScan != null && session.scan != null && session.scan.size() == offset) {
+                    session.scan = continuedScan;
+                } else {
+                    // Bytes the scan already covered may have been replaced
+                    session.dropScanFrom(offset);
+                }
+                saveState(session);
+            } finally {
+                session.lock.unlock();
+            }
+        } catch (NoSuchFileException e) {
+            throw new UploadNotFoundException(uploadId);
+        } catch (IOException | RuntimeException e) {
+            // Whatever was overwritten can no longer be trusted, even if an earlier chunk had delivered it
+            rejectedChunks.incrementAndGet();
+            if (written > 0) {
+                session.lock.lock();
+                try {
+                    session.removeRange(offset, offset + written);
+                    session.dropScanFrom(offset);
+                    saveState(session);
+                } finally {
+                    session.lock.unlock();
+                }
+            }
+            throw e;
+        } finally {
+            session.lock.lock();
+            try {
+                session.chunksInFlight--;
+            } finally {
+                session.lock.unlock();
+            }
+        }
+        receivedChunks.incrementAndGet();
+        receivedBytes.addAndGet(written);
+        return session;
+    }
+
+    /**
+     * Get an upload's progress, including the byte ranges still missing
+     */
+    public UploadSession getUpload(String uploadId, Long ownerId) throws IOException {
+        return getSession(uploadId, ownerId);
+    }
+
+    /**
+     * Check that the whole file arrived intact and turn it into a document
+     */
+    public Document complete(String uploadId, Long ownerId) throws IOException {
+        UploadSession session = getSession(uploadId, ownerId);
+        session.lock.lock();
+        try {
+            if (session.completing) {
+                throw new IllegalStateException("Upload " + uploadId + " is already being completed");
+            }
+            if (session.chunksInFlight > 0) {
+                throw new IllegalStateException("Upload " + uploadId + " still has chunks being written");
+            }
+            if (session.getReceivedBytes() < session.size) {
+                StringBuilder missing = new StringBuilder();
+                session.getMissingRanges().forEach(range -> missing.append(missing.length() > 0 ? ", " : "")
+                        .append(range[0]).append('-').append(range[1]));
+                throw new IllegalStateException("Upload " + uploadId + " is missing " + (session.size - session.getReceivedBytes())
+                        + " bytes (" + missing + ")");
+            }
+            session.completing = true;
+        } finally {
+            session.lock.unlock();
+        }
+        try {
+            Path data = dataFile(uploadId);
+            // Only what arrived out of order (or since a restart) is read back from disk
+            UploadScan scan = (session.scan != null ? session.scan.copy() : new UploadScan()).scanFrom(data);
+            if (scan.size() != session.size) {
+                throw new IOException("Upload " + uploadId + " has " + scan.size() + " bytes on disk, expected " + session.size);
+            }
+            if (session.sha256 != null && !session.sha256.equals(scan.sha256())) {
+                // Chunks that were each intact can still add up to the wrong file (e.g. wrong offsets)
+                discard(uploadId);
+                throw new ChunkIntegrityException("Uploaded file does not match its SHA-256; start the upload again");
+            }
+            // Other failures leave the data file in place, so completing can be retried
+            Document document;
+            try {
+                document = documentService.uploadStoredFile(data, session.filename, scan, session.ownerId);
+            } catch (IllegalArgumentException e) {
+                // The file itself is unacceptable (e.g. not what its extension says); sending it again won't help
+                discard(uploadId);
+                throw e;
+            }
+            discard(uploadId);
+            completedUploads.incrementAndGet();
+            System.out.println("✅ Completed chunked upload " + uploadId + " as document " + document.getId());
+            return document;
+        } finally {
+            session.completing = false;
+        }
+    }
+
+    /**
+     * Abandon an upload, deleting what was received
+     */
+    public boolean cancel(String uploadId, Long ownerId) throws IOException {
+        getSession(uploadId, ownerId);
+        return discard(uploadId);
+    }
+
+    /**
+     * Delete uploads that have not received a chunk for a while
+     */
+    @Scheduled(fixedDelayString = "${upload.chunked.cleanup-interval-ms:3600000}")
+    public void deleteExpiredUploads() {
+        long cutoff = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(expireHours);
+        try (DirectoryStream<Path> states = Files.newDirectoryStream(partialDirectory, "*" + STATE_SUFFIX)) {
+            for (Path state : states) {
+                if (Files.getLastModifiedTime(state).toMillis() < cutoff) {
+                    String uploadId = state.getFileName().toString().replace(STATE_SUFFIX, "");
+                    UploadSession session = sessions.get(uploadId);
+                    if (session == null || !session.completing) {
+                        discard(uploadId);
+                        expiredUploads.incrementAndGet();
+                        System.out.println("🧹 Deleted abandoned chunked upload " + uploadId);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("⚠️ Could not clean up chunked uploads: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Get chunked upload statistics
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("activeUploads", sessions.size());
+        stats.put("startedUploads", startedUploads.get());
+        stats.put("completedUploads", completedUploads.get());
+        stats.put("expiredUploads", expiredUploads.get());
+        stats.put("receivedChunks", receivedChunks.get());
+        stats.put("rejectedChunks", rejectedChunks.get());
+        stats.put("receivedBytes", receivedBytes.get());
+        return stats;
+    }
+
+    /**
+     * Chunk size suggested to clients
+     */
+    public long getChunkSize() {
+        return Math.min(chunkSizeMb, maxChunkSizeMb) * MB;
+    }
+
+    private UploadSession getSession(String uploadId, Long ownerId) throws IOException {
+        if (uploadId == null || !uploadId.matches("[0-9a-f-]{36}")) {
+            throw new UploadNotFoundException(uploadId);
+        }
+        UploadSession session = sessions.get(uploadId);
+        if (session == null) {
+            // Started before a restart
+            session = loadState(uploadId);
+            if (session == null) {
+                throw new UploadNotFoundException(uploadId);
+            }
+            UploadSession existing = sessions.putIfAbsent(uploadId, session);
+            session = existing != null ? existing : session;
+        }
+        if (session.ownerId != null && !session.ownerId.equals(ownerId)) {
+            throw new UploadNotFoundException(uploadId);
+        }
+        return session;
+    }
+
+    private boolean discard(String uploadId) throws IOException {
+        sessions.remove(uploadId);
+        boolean deleted = Files.deleteIfExists(dataFile(uploadId));
+        return Files.deleteIfExists(stateFile(uploadId)) || deleted;
+    }
+
+    private void saveState(UploadSession session) throws IOException {
+        Properties state = new Properties();
+        state.setProperty("filename", session.filename);
+        state.setProperty("size", String.valueOf(session.size));
+        if (session.sha256 != null) {
+            state.setProperty("sha256", session.sha256);
+        }
+        if (session.ownerId != null) {
+            state.setProperty("ownerId", String.valueOf(session.ownerId));
+        }
+        state.setProperty("ranges", session.formatRanges());
+        // Written aside and renamed, so a crash never leaves a half-written state file
+        Path temp = partialDirectory.resolve(session.uploadId + STATE_SUFFIX + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            state.store(out, null);
+        }
+        Files.move(temp, stateFile(session.uploadId), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private UploadSession loadState(String uploadId) throws IOException {
+        Path stateFile = stateFile(uploadId);
+        if (!Files.exists(stateFile) || !Files.exists(dataFile(uploadId))) {
+            return null;
+        }
+        Properties state = new Properties();
+        try (Reader reader = Files.newBufferedReader(stateFile)) {
+            state.load(reader);
+        }
+        String ownerId = state.getProperty("ownerId");
+        UploadSession session = new UploadSession(uploadId, state.getProperty("filename"),
+                Long.parseLong(state.getProperty("size")), state.getProperty("sha256"),
+                ownerId != null ? Long.valueOf(ownerId) : null);
+        session.parseRanges(state.getProperty("ranges", ""));
+        return session;
+    }
+
+    private Path dataFile(String uploadId) {
+        return partialDirectory.resolve(uploadId + DATA_SUFFIX);
+    }
+
+    private Path stateFile(String uploadId) {
+        return partialDirectory.resolve(uploadId + STATE_SUFFIX);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * State of one chunked upload: which byte ranges of the file have been received
+     */
+    public static class UploadSession {
+        private final String uploadId;
+        private final String filename;
+        private final long size;
+        private final String sha256;
+        private final Long ownerId;
+        // Received ranges as start -> end (exclusive), merged so they never touch or overlap
+        private final TreeMap<Long, Long> ranges = new TreeMap<>();
+        // Guards the ranges, the scan and the state file; a lock rather than synchronized, so a virtual
+        // thread saving the state doesn't pin its carrier
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile boolean completing;
+        private int chunksInFlight;
+        // Scan of the file from its start up to where chunks have arrived in order; not kept across restarts
+        private UploadScan scan = new UploadScan();
+
+        private UploadSession(String uploadId, String filename, long size, String sha256, Long ownerId) {
+            this.uploadId = uploadId;
+            this.filename = filename;
+            this.size = size;
+            this.sha256 = sha256;
+            this.ownerId = ownerId;
+        }
+
+        // Callers hold the lock
+        private void addRange(long start, long end) {
+            Map.Entry<Long, Long> before = ranges.floorEntry(start);
+            if (before != null && before.getValue() >= start) {
+                start = before.getKey();
+                end = Math.max(end, before.getValue());
+            }
+            Map.Entry<Long, Long> after;
+            while ((after = ranges.ceilingEntry(start)) != null && after.getKey() <= end) {
+                end = Math.max(end, after.getValue());
+                ranges.remove(after.getKey());
+            }
+            ranges.put(start, end);
+        }
+
+        private void removeRange(long start, long end) {
+            Map.Entry<Long, Long> before = ranges.lowerEntry(start);
+            if (before != null && before.getValue() > start) {
+                ranges.put(before.getKey(), start);
+                if (before.getValue() > end) {
+                    ranges.put(end, before.getValue());
+                }
+            }
+            Map.Entry<Long, Long> inside;
+            while ((inside = ranges.ceilingEntry(start)) != null && inside.getKey() < end) {
+                ranges.remove(inside.getKey());
+                if (inside.getValue() > end) {
+                    ranges.put(end, inside.getValue());
+                }
+            }
+        }
+
+        private void dropScanFrom(long offset) {
+            if (scan != null && offset < scan.size()) {
+                scan = null;
+            }
+        }
+
+        private String formatRanges() {
+            StringBuilder text = new StringBuilder();
+            ranges.forEach((start, end) -> text.append(text.length() > 0 ? "," : "").append(start).append('-').append(end));
+            return text.toString();
+        }
+
+        private void parseRanges(String text) {
+            for (String range : text.split(",")) {
+                int dash = range.indexOf('-');
+                if (dash > 0) {
+                    addRange(Long.parseLong(range.substring(0, dash).trim()), Long.parseLong(range.substring(dash + 1).trim()));
+                }
+            }
+        }
+
+        public String getUploadId() { return uploadId; }
+
+        public String getFilename() { return filename; }
+
+        public long getSize() { return size; }
+
+        public long getReceivedBytes() {
+            lock.lock();
+            try {
+                return ranges.entrySet().stream().mapToLong(range -> range.getValue() - range.getKey()).sum();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Byte ranges (start inclusive, end exclusive) not received yet
+         */
+        public List<long[]> getMissingRanges() {
+            lock.lock();
+            try {
+                List<long[]> missing = new ArrayList<>();
+                long position = 0;
+                for (Map.Entry<Long, Long> range : ranges.entrySet()) {
+                    if (range.getKey() > position) {
+                        missing.add(new long[] { position, range.getKey() });
+                    }
+                    position = Math.max(position, range.getValue());
+                }
+                if (position < size) {
+                    missing.add(new long[] { position, size });
+                }
+                return missing;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Offset of the first byte not received yet, where a sequential client continues
+         */
+        public long getNextOffset() {
+            lock.lock();
+            try {
+                Map.Entry<Long, Long> first = ranges.firstEntry();
+                return first != null && first.getKey() == 0 ? first.getValue() : 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * No upload with this ID (never started, completed, cancelled, expired, or someone else's)
+     */
+    public static class UploadNotFoundException extends IllegalArgumentException {
+        private static final long serialVersionUID = 1L;
+
+        public UploadNotFoundException(String uploadId) {
+            super("Upload not found: " + uploadId);
+        }
+    }
+
+    /**
+     * A chunk or the assembled file failed its integrity check
+     */
+    public static class ChunkIntegrityException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public ChunkIntegrityException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.smartstudy.service;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * SAX content handler that hands extracted text on in bounded chunks instead of building one String
+ *
+ * Chunks are cut at whitespace once they reach the target size, and every slide in Tika's
+ * PowerPoint output starts a new chunk. Parsing stops once the write limit is reached or
+ * the handler is aborted (e.g. by a parse timeout).
+ */
+public class ChunkingContentHandler extends DefaultHandler {
+
+    /**
+     * Receives each chunk of text and the slide it came from (0 outside slides)
+     */
+    @FunctionalInterface
+    public interface ChunkListener {
+        void onChunk(String text, int slide);
+    }
+
+    private final int chunkChars;
+    private final long writeLimit;
+    private final ChunkListener listener;
+    private final StringBuilder buffer = new StringBuilder();
+
+    private long charactersWritten;
+    private int slide;
+    private volatile String stopReason;
+
+    public ChunkingContentHandler(int chunkChars, long writeLimit, ChunkListener listener) {
+        this.chunkChars = Math.max(1, chunkChars);
+        this.writeLimit = writeLimit;
+        this.listener = listener;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+        checkStopped();
+        if ("div".equals(localName) && "slide-content".equals(attributes.getValue("class"))) {
+            flush();
+            slide++;
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException {
+        checkStopped();
+        int allowed = (int) Math.max(0, Math.min(length, writeLimit - charactersWritten));
+        buffer.append(ch, start, allowed);
+        charactersWritten += allowed;
+        while (buffer.length() >= chunkChars) {
+            emit(cutPoint());
+        }
+        if (allowed < length) {
+            stopReason = "Write limit of " + writeLimit + " characters reached";
+            throw new SAXException(stopReason);
+        }
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+        characters(ch, start, length);
+    }
+
+    @Override
+    public void endDocument() {
+        flush();
+    }
+
+    /**
+     * Hand on whatever is still buffered
+     */
+    public void flush() {
+        emit(buffer.length());
+    }
+
+    /**
+     * Stop parsing at the next SAX event
+     */
+    public void abort(String reason) {
+        stopReason = reason;
+    }
+
+    public boolean isStopped() { return stopReason != null; }
+
+    public String getStopReason() { return stopReason; }
+
+    public long getCharactersWritten() { return charactersWritten; }
+
+    private void checkStopped() throws SAXException {
+        if (stopReason != null) {
+            throw new SAXException(stopReason);
+        }
+    }
+
+    /**
+     * End of the next chunk: the last whitespace in the second half of the target size, or a hard cut
+     */
+    private int cutPoint() {
+        for (int i = chunkChars - 1; i >= chunkChars / 2; i--) {
+            if (Character.isWhitespace(buffer.charAt(i))) {
+                return i + 1;
+            }
+        }
+        return chunkChars;
+    }
+
+    private void emit(int end) {
+        if (end <= 0) {
+            return;
+        }
+        String text = buffer.substring(0, end);
+        buffer.delete(0, end);
+        if (!text.isBlank()) {
+            listener.onChunk(text, slide);
+        }
+    }
+}
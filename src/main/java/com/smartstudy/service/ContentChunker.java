@@ -0,0 +1,276 @@
+package com.smartstudy.service;
+
+import com.smartstudy.model.DocumentContent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Re-cuts extracted blocks into evenly sized, overlapping chunks for indexing and retrieval
+ *
+ * Consecutive blocks with the same provenance (page, slide and section, ignoring "(part N)"
+ * suffixes) are joined and cut again near the target size, preferring paragraph, then sentence,
+ * then word boundaries. Blocks from different pages, slides or sections are never merged, so
+ * every chunk keeps the location it came from. Sizes are in estimated tokens (about four
+ * characters per token, at least one per word).
+ */
+@Component
+public class ContentChunker {
+
+    @Value("${ingestion.chunking.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ingestion.chunking.target-tokens:400}")
+    private int targetTokens;
+
+    @Value("${ingestion.chunking.overlap-tokens:50}")
+    private int overlapTokens;
+
+    private final AtomicLong blocksIn = new AtomicLong();
+    private final AtomicLong chunksOut = new AtomicLong();
+    private final AtomicLong tokensOut = new AtomicLong();
+
+    /**
+     * Open a chunking stage in front of a sink; call {@link Stage#finish()} after the last block
+     */
+    public Stage open(Consumer<DocumentContent> downstream) {
+        return new Stage(downstream);
+    }
+
+    /**
+     * Estimated number of tokens in a piece of text
+     */
+    public static int estimateTokens(CharSequence text) {
+        int tokens = 0;
+        int wordLength = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.isWhitespace(text.charAt(i))) {
+                tokens += wordTokens(wordLength);
+                wordLength = 0;
+            } else {
+                wordLength++;
+            }
+        }
+        return tokens + wordTokens(wordLength);
+    }
+
+    private static int wordTokens(int wordLength) {
+        return wordLength == 0 ? 0 : Math.max(1, (wordLength + 3) / 4);
+    }
+
+    /**
+     * Get chunking statistics
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long chunks = chunksOut.get();
+        stats.put("enabled", enabled);
+        stats.put("targetTokens", targetTokens);
+        stats.put("overlapTokens", overlapTokens);
+        stats.put("blocksIn", blocksIn.get());
+        stats.put("chunksOut", chunks);
+        stats.put("averageChunkTokens", chunks > 0 ? tokensOut.get() / chunks : 0);
+        return stats;
+    }
+
+    /**
+     * Chunking stage for one document (or one archive entry); not thread-safe
+     */
+    public class Stage implements Consumer<DocumentContent> {
+        private final Consumer<DocumentContent> downstream;
+        private final int target = Math.max(1, targetTokens);
+        private final int overlap = Math.max(0, Math.min(overlapTokens, target / 2));
+        private final int max = target + target / 4;
+
+        // Text of the current run of blocks; buffer[start..] is still to be emitted
+        private final StringBuilder buffer = new StringBuilder();
+        private int start;
+        private DocumentContent template;
+        private String baseTitle;
+        private int part;
+
+        private Stage(Consumer<DocumentContent> downstream) {
+            this.downstream = downstream;
+        }
+
+        @Override
+        public void accept(DocumentContent content) {
+            if (!enabled) {
+                downstream.accept(content);
+                return;
+            }
+            blocksIn.incrementAndGet();
+            String title = baseTitle(content.getSectionTitle());
+            if (template == null || !Objects.equals(template.getPageNumber(), content.getPageNumber())
+                    || !Objects.equals(template.getSlideNumber(), content.getSlideNumber())
+                    || !Objects.equals(baseTitle, title)) {
+                flushRun();
+                template = content;
+                baseTitle = title;
+            } else if (buffer.length() > start) {
+                // Extractors cut long runs at arbitrary points; only keep a line break after a finished sentence
+                buffer.append(endsSentence(buffer) ? '\n' : ' ');
+            }
+            buffer.append(content.getContent());
+            while (offsetAfterTokens(start, max) < buffer.length()) {
+                emitChunk();
+            }
+        }
+
+        /**
+         * Emit whatever is still buffered
+         */
+        public void finish() {
+            flushRun();
+        }
+
+        private void flushRun() {
+            if (template != null) {
+                while (offsetAfterTokens(start, max) < buffer.length()) {
+                    emitChunk();
+                }
+                emit(buffer.length());
+            }
+            buffer.setLength(0);
+            start = 0;
+            template = null;
+            baseTitle = null;
+            part = 0;
+        }
+
+        /**
+         * Emit one chunk of about the target size and keep the overlap for the next one
+         */
+        private void emitChunk() {
+            int targetEnd = offsetAfterTokens(start, target);
+            int minEnd = offsetAfterTokens(start, target * 3 / 5);
+            int cut = boundaryBefore(minEnd, targetEnd);
+            emit(cut);
+
+            int next = overlap > 0 ? overlapStart(cut) : cut;
+            start = Math.max(next, start + 1);
+            // Drop emitted text now and then instead of on every chunk
+            if (start > 8192 && start > buffer.length() / 2) {
+                buffer.delete(0, start);
+                start = 0;
+            }
+        }
+
+        private void emit(int end) {
+            String text = buffer.substring(start, end).trim();
+            if (text.isEmpty()) {
+                return;
+            }
+            part++;
+            DocumentContent chunk = new DocumentContent();
+            chunk.setDocument(template.getDocument());
+            chunk.setPageNumber(template.getPageNumber());
+            chunk.setSlideNumber(template.getSlideNumber());
+            chunk.setTopic(template.getTopic());
+            chunk.setSectionTitle(baseTitle == null || part == 1 ? baseTitle : baseTitle + " (part " + part + ")");
+            chunk.setContent(text);
+            chunksOut.incrementAndGet();
+            tokensOut.addAndGet(estimateTokens(text));
+            downstream.accept(chunk);
+        }
+
+        /**
+         * Last paragraph break, else sentence end, else word break in [from, to], or to if there is none
+         */
+        private int boundaryBefore(int from, int to) {
+            int sentence = -1;
+            int word = -1;
+            for (int i = to - 1; i >= from && i > start; i--) {
+                char c = buffer.charAt(i);
+                if (c == '\n') {
+                    return i + 1;
+                }
+                if (Character.isWhitespace(c)) {
+                    char previous = buffer.charAt(i - 1);
+                    if (sentence < 0 && (previous == '.' || previous == '?' || previous == '!')) {
+                        sentence = i + 1;
+                    }
+                    if (word < 0) {
+                        word = i + 1;
+                    }
+                }
+            }
+            return sentence >= 0 ? sentence : word >= 0 ? word : to;
+        }
+
+        /**
+         * Where the next chunk starts: about overlap tokens before the cut, moved to a nearby sentence start if there is one
+         */
+        private int overlapStart(int cut) {
+            int tokens = 0;
+            int wordLength = 0;
+            int position = cut;
+            while (position > start && tokens < overlap) {
+                position--;
+                if (Character.isWhitespace(buffer.charAt(position))) {
+                    tokens += wordTokens(wordLength);
+                    wordLength = 0;
+                } else {
+                    wordLength++;
+                }
+            }
+            // Prefer the start of the sentence the overlap begins in, as long as that at most doubles it
+            int window = cut - position;
+            for (int i = position - 1; i > Math.max(start, position - window); i--) {
+                if (isSentenceEnd(i)) {
+                    return i + 2;
+                }
+            }
+            for (int i = position; i < cut - window / 2; i++) {
+                if (isSentenceEnd(i)) {
+                    return i + 2;
+                }
+            }
+            while (position < cut && !Character.isWhitespace(buffer.charAt(position))) {
+                position++;
+            }
+            return position;
+        }
+
+        /**
+         * Offset just after the word at which the estimated token count from `from` reaches `tokens`,
+         * or the buffer length if the rest is shorter
+         */
+        private int offsetAfterTokens(int from, int tokens) {
+            int count = 0;
+            int wordLength = 0;
+            for (int i = from; i < buffer.length(); i++) {
+                if (Character.isWhitespace(buffer.charAt(i))) {
+                    count += wordTokens(wordLength);
+                    wordLength = 0;
+                    if (count >= tokens) {
+                        return i;
+                    }
+                } else {
+                    wordLength++;
+                }
+            }
+            return buffer.length();
+        }
+
+        private boolean isSentenceEnd(int i) {
+            char c = buffer.charAt(i);
+            return (c == '.' || c == '?' || c == '!' || c == '\n') && i + 1 < buffer.length()
+                    && Character.isWhitespace(buffer.charAt(i + 1));
+        }
+
+        private boolean endsSentence(CharSequence text) {
+            char last = text.charAt(text.length() - 1);
+            return last == '.' || last == '?' || last == '!' || last == ':' || last == '\n';
+        }
+    }
+
+    private static String baseTitle(String sectionTitle) {
+        return sectionTitle == null ? null : sectionTitle.replaceFirst(" \\(part \\d+\\)$", "");
+    }
+}
@@ -0,0 +1,567 @@
+package com.smartstudy.service;
+
+import com.smartstudy.model.Document;
+import com.smartstudy.model.DocumentContent;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.poi.hwpf.HWPFDocument;
+import org.apache.poi.hwpf.extractor.WordExtractor;
+import org.apache.poi.openxml4j.util.ZipSecureFile;
+import org.apache.poi.sl.usermodel.GroupShape;
+import org.apache.poi.sl.usermodel.Notes;
+import org.apache.poi.sl.usermodel.Placeholder;
+import org.apache.poi.sl.usermodel.Shape;
+import org.apache.poi.sl.usermodel.ShapeContainer;
+import org.apache.poi.sl.usermodel.Slide;
+import org.apache.poi.sl.usermodel.SlideShow;
+import org.apache.poi.sl.usermodel.SlideShowFactory;
+import org.apache.poi.sl.usermodel.TableCell;
+import org.apache.poi.sl.usermodel.TableShape;
+import org.apache.poi.sl.usermodel.TextShape;
+import org.apache.tika.Tika;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.sax.BodyContentHandler;
+import org.springframework.core.env.Environment;
+import org.xml.sax.SAXException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Extracts the content blocks of one file with the parser for its type: PDFBox, POI, or Tika for everything else
+ *
+ * A plain class rather than a bean, because it runs in two places: DocumentProcessingService builds
+ * one for in-process extraction, and each isolated extraction worker process (which has no Spring
+ * context) builds its own. Both pass in their environment, so the settings are read the same way.
+ */
+class ContentExtractor implements AutoCloseable {
+
+    /**
+     * Reopenable source of file bytes (a file on disk or a ZIP entry)
+     */
+    @FunctionalInterface
+    interface ContentSource {
+        InputStream open() throws IOException;
+    }
+
+    private final Tika tika = new Tika();
+    private final PdfMemoryBudget pdfMemoryBudget;
+    private final ScheduledExecutorService extractionWatchdog;
+    private final ExecutorService pdfExtractionPool;
+
+    private final int pdfParallelism;
+    private final int pdfMinPagesPerWorker;
+    private final int tikaChunkChars;
+    private final long tikaWriteLimitChars;
+    private final long tikaParseTimeoutSeconds;
+    private final int docxBlockChars;
+
+    /**
+     * @param settings source of the ingestion.* settings (the application's or the worker's environment)
+     * @param extractionWatchdog scheduler for parse timeouts and the time limits of parallel page ranges
+     */
+    ContentExtractor(Environment settings, PdfMemoryBudget pdfMemoryBudget, ScheduledExecutorService extractionWatchdog) {
+        this.pdfMemoryBudget = pdfMemoryBudget;
+        this.extractionWatchdog = extractionWatchdog;
+        pdfParallelism = settings.getProperty("ingestion.pdf.parallelism", Integer.class, 4);
+        pdfMinPagesPerWorker = settings.getProperty("ingestion.pdf.min-pages-per-worker", Integer.class, 25);
+        tikaChunkChars = settings.getProperty("ingestion.tika.chunk-chars", Integer.class, 5000);
+        tikaWriteLimitChars = settings.getProperty("ingestion.tika.write-limit-chars", Long.class, 5_000_000L);
+        tikaParseTimeoutSeconds = settings.getProperty("ingestion.tika.parse-timeout-seconds", Long.class, 120L);
+        docxBlockChars = settings.getProperty("ingestion.docx.block-chars", Integer.class, 5000);
+
+        // Large decks (a slide, its layout rels and notes per slide) exceed POI's default of 1000 zip entries
+        ZipSecureFile.setMaxFileCount(settings.getProperty("ingestion.ooxml.max-file-count", Long.class, 10000L));
+
+        int pdfExtractionThreads = settings.getProperty("ingestion.pdf.extraction-threads", Integer.class, 0);
+        AtomicInteger threadNumber = new AtomicInteger();
+        pdfExtractionPool = Executors.newFixedThreadPool(
+                pdfExtractionThreads > 0 ? pdfExtractionThreads : Runtime.getRuntime().availableProcessors(), runnable -> {
+                    Thread thread = new Thread(runnable, "pdf-extract-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Stop the page range workers
+     */
+    @Override
+    public void close() {
+        pdfExtractionPool.shutdownNow();
+    }
+
+    /**
+     * Extract content from a single file, starting at the given page for PDFs
+     *
+     * PDFs and DOCX files are read from the file itself, since both parsers need random access.
+     */
+    void extract(Path filePath, String filename, Document document, Consumer<DocumentContent> sink, int firstPage) throws IOException {
+        ContentSource source = () -> Files.newInputStream(filePath);
+        String fileExtension = getFileExtension(filename).toLowerCase();
+        if (fileExtension.equals(".pdf")) {
+            extractWithFallback(pdfSink -> extractPdfContent(filePath, filename, document, firstPage, pdfSink),
+                    source, filename, document, sink);
+            return;
+        }
+        if (fileExtension.equals(".docx")) {
+            extractWithFallback(docxSink -> extractDocxContent(filePath, filename, document, docxSink),
+                    source, filename, document, sink);
+            return;
+        }
+        extract(source, filename, document, sink);
+    }
+
+    /**
+     * Extract content of a file that can be parsed from a stream (not PDF or DOCX) based on its type
+     */
+    void extract(ContentSource source, String filename, Document document, Consumer<DocumentContent> sink) {
+        String fileExtension = getFileExtension(filename).toLowerCase();
+
+        switch (fileExtension) {
+            case ".doc":
+                extractWithFallback(docSink -> extractDocContent(source, filename, document).forEach(docSink),
+                        source, filename, document, sink);
+                break;
+            case ".ppt":
+            case ".pptx":
+                extractWithFallback(slideSink -> extractPowerPointContent(source, filename, document, slideSink),
+                        source, filename, document, sink);
+                break;
+            default:
+                // Use Tika for other file types; falling back to the same parser would not help
+                extractWithFallback(genericSink -> extractGenericContent(source, filename, document, genericSink),
+                        null, filename, document, sink);
+                break;
+        }
+    }
+
+    /**
+     * Extractor writing blocks to a sink
+     */
+    @FunctionalInterface
+    private interface Extraction {
+        void extractTo(Consumer<DocumentContent> sink) throws Exception;
+    }
+
+    /**
+     * Run a type-specific extractor, trying generic extraction as fallback if it fails before handing anything on
+     *
+     * @param source file to run the generic fallback on, or null for no fallback
+     */
+    private void extractWithFallback(Extraction extraction, ContentSource source, String filename, Document document, Consumer<DocumentContent> sink) {
+        AtomicInteger emitted = new AtomicInteger();
+        AtomicReference<RuntimeException> sinkFailure = new AtomicReference<>();
+        try {
+            extraction.extractTo(content -> {
+                // Stop between blocks once the time limit has passed
+                ExtractionTimeout.checkCurrent();
+                emitted.incrementAndGet();
+                try {
+                    sink.accept(content);
+                } catch (RuntimeException e) {
+                    sinkFailure.set(e);
+                    throw e;
+                }
+            });
+        } catch (Exception e) {
+            // Failures saving the content are not extraction problems, so don't fall back on them
+            if (sinkFailure.get() != null) {
+                throw sinkFailure.get();
+            }
+            // Nor is running out of time (the parser may fail in any way once its input is closed under it)
+            ExtractionTimeout.checkCurrent();
+            System.err.println("Error extracting content from " + filename + ": " + e.getMessage());
+            // Blocks already handed on can't be taken back, so only fall back if nothing was extracted
+            if (emitted.get() > 0) {
+                throw new ExtractionTruncatedException(filename, emitted.get(), e);
+            }
+            if (source != null) {
+                AtomicInteger fallbackEmitted = new AtomicInteger();
+                try {
+                    extractGenericContent(source, filename, document, content -> {
+                        fallbackEmitted.incrementAndGet();
+                        sink.accept(content);
+                    });
+                } catch (RuntimeException fallbackError) {
+                    throw fallbackError;
+                } catch (Exception fallbackError) {
+                    System.err.println("Fallback extraction also failed for " + filename + ": " + fallbackError.getMessage());
+                    if (fallbackEmitted.get() > 0) {
+                        throw new ExtractionTruncatedException(filename, fallbackEmitted.get(), fallbackError);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Extract content from PDF files using PDFBox
+     */
+    @SuppressWarnings("try") // registrations only need closing
+    private void extractPdfContent(Path filePath, String filename, Document document, int firstPage, Consumer<DocumentContent> sink) throws IOException {
+        int pagesProcessed = 0;
+        int totalPages;
+        int workers;
+
+        try (PdfMemoryBudget.Lease lease = pdfMemoryBudget.lease(filePath);
+             PDDocument pdfDocument = loadPdf(filePath, lease);
+             ExtractionTimeout.Registration closeOnTimeout = ExtractionTimeout.closeOnTimeout(pdfDocument)) {
+            totalPages = pdfDocument.getNumberOfPages();
+
+            System.out.println("📄 Processing PDF with " + totalPages + " pages: " + filename);
+            if (firstPage > 1) {
+                System.out.println("⏩ Starting at page " + firstPage);
+            }
+
+            // Small PDFs aren't worth loading more than once
+            int remainingPages = Math.max(0, totalPages - firstPage + 1);
+            int minPagesPerWorker = Math.max(1, pdfMinPagesPerWorker);
+            workers = Math.min(pdfParallelism, (remainingPages + minPagesPerWorker - 1) / minPagesPerWorker);
+            if (workers <= 1) {
+                pagesProcessed = extractPdfPages(pdfDocument, firstPage, totalPages, document, sink);
+                System.out.println("📊 Total pages processed: " + pagesProcessed + " out of " + totalPages);
+                return;
+            }
+        }
+
+        // Split the pages into contiguous ranges; each worker loads its own copy of the PDF
+        // because PDDocument and PDFTextStripper are not thread-safe
+        int pagesPerWorker = (totalPages - firstPage + 1 + workers - 1) / workers;
+        System.out.println("⚡ Extracting " + (totalPages - firstPage + 1) + " pages with " + workers + " parallel workers");
+
+        // Range workers run within the caller's time limit
+        ExtractionTimeout callerTimeout = ExtractionTimeout.current();
+        List<Future<List<DocumentContent>>> ranges = new ArrayList<>();
+        for (int startPage = firstPage; startPage <= totalPages; startPage += pagesPerWorker) {
+            int rangeStart = startPage;
+            int rangeEnd = Math.min(totalPages, startPage + pagesPerWorker - 1);
+            ranges.add(pdfExtractionPool.submit(() -> {
+                try (ExtractionTimeout rangeTimeout = ExtractionTimeout.within(extractionWatchdog,
+                             "Pages " + rangeStart + "-" + rangeEnd + " of " + filename, callerTimeout);
+                     PdfMemoryBudget.Lease lease = pdfMemoryBudget.lease(filePath);
+                     PDDocument workerDocument = loadPdf(filePath, lease);
+                     ExtractionTimeout.Registration closeOnTimeout = ExtractionTimeout.closeOnTimeout(workerDocument)) {
+                    List<DocumentContent> rangeContent = new ArrayList<>();
+                    extractPdfPages(workerDocument, rangeStart, rangeEnd, document, content -> {
+                        rangeTimeout.check();
+                        rangeContent.add(content);
+                    });
+                    return rangeContent;
+                }
+            }));
+        }
+
+        // Collect in submission order so pages stay in order
+        try {
+            for (Future<List<DocumentContent>> range : ranges) {
+                List<DocumentContent> rangeContent;
+                try (ExtractionTimeout.Registration interruptible = ExtractionTimeout.interruptibleWait()) {
+                    rangeContent = range.get();
+                }
+                rangeContent.forEach(sink);
+                pagesProcessed += rangeContent.size();
+            }
+        } catch (InterruptedException e) {
+            ranges.forEach(range -> range.cancel(true));
+            // Interrupted because the time limit passed: report that, without passing the interrupt on
+            ExtractionTimeout.checkCurrent();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while extracting PDF " + filename, e);
+        } catch (ExecutionException e) {
+            ranges.forEach(range -> range.cancel(true));
+            throw new IOException("Failed to extract PDF " + filename + ": " + e.getCause().getMessage(), e.getCause());
+        }
+
+        System.out.println("📊 Total pages processed: " + pagesProcessed + " out of " + totalPages);
+    }
+
+    /**
+     * Load a PDF for text extraction, buffering within the memory reserved by the lease
+     */
+    private PDDocument loadPdf(Path filePath, PdfMemoryBudget.Lease lease) throws IOException {
+        return PDDocument.load(filePath.toFile(), lease.getMemoryUsageSetting());
+    }
+
+    /**
+     * Extract a range of pages (inclusive) with its own text stripper, handing each page on as it is extracted
+     *
+     * @return number of pages handed on
+     */
+    private int extractPdfPages(PDDocument pdfDocument, int startPage, int endPage, Document document, Consumer<DocumentContent> sink) throws IOException {
+        int pageCount = 0;
+        PDFTextStripper stripper = new PDFTextStripper();
+
+        // Extract text page by page
+        for (int pageNum = startPage; pageNum <= endPage; pageNum++) {
+            DocumentContent content = new DocumentContent();
+            content.setDocument(document);
+            content.setPageNumber(pageNum);
+            content.setSectionTitle("Page " + pageNum);
+            try {
+                stripper.setStartPage(pageNum);
+                stripper.setEndPage(pageNum);
+
+                String pageText = stripper.getText(pdfDocument);
+                if (pageText != null && !pageText.trim().isEmpty()) {
+                    content.setContent(pageText.trim());
+
+                    System.out.println("  ✅ Page " + pageNum + " processed (" + pageText.trim().length() + " characters)");
+                } else {
+                    System.out.println("  ⚠️ Page " + pageNum + " has no content");
+                    // Still create a content entry for empty pages to maintain page count
+                    content.setContent("[Page " + pageNum + " - No text content]");
+                    content.setTopic("Empty Page");
+                }
+            } catch (Exception e) {
+                System.err.println("  ❌ Error processing page " + pageNum + ": " + e.getMessage());
+                // Create a placeholder for failed pages
+                content.setContent("[Page " + pageNum + " - Error processing: " + e.getMessage() + "]");
+                content.setTopic("Error Page");
+            }
+            // Outside the try, so a failure downstream isn't mistaken for a bad page
+            sink.accept(content);
+            pageCount++;
+        }
+
+        return pageCount;
+    }
+
+    /**
+     * Extract content from DOC files using Apache POI
+     */
+    @SuppressWarnings("try") // registrations only need closing
+    private List<DocumentContent> extractDocContent(ContentSource source, String filename, Document document) throws IOException {
+        List<DocumentContent> contentList = new ArrayList<>();
+
+        try (InputStream fis = source.open();
+             ExtractionTimeout.Registration closeOnTimeout = ExtractionTimeout.closeOnTimeout(fis);
+             HWPFDocument docDocument = new HWPFDocument(fis)) {
+
+            WordExtractor extractor = new WordExtractor(docDocument);
+            String text = extractor.getText();
+
+            if (text != null && !text.trim().isEmpty()) {
+                DocumentContent content = new DocumentContent();
+                content.setDocument(document);
+                content.setContent(text.trim());
+                content.setSectionTitle("Document Content");
+                contentList.add(content);
+            }
+        }
+
+        return contentList;
+    }
+
+    /**
+     * Extract content from DOCX files by streaming the package XML, one block per heading section
+     */
+    private void extractDocxContent(Path filePath, String filename, Document document, Consumer<DocumentContent> sink) throws Exception {
+        long startTime = System.currentTimeMillis();
+        DocxStreamingReader reader = new DocxStreamingReader(docxBlockChars, (sectionTitle, text) -> {
+            DocumentContent content = new DocumentContent();
+            content.setDocument(document);
+            content.setContent(text);
+            content.setSectionTitle(sectionTitle);
+            sink.accept(content);
+        });
+        reader.read(filePath);
+
+        System.out.println("📝 Extracted " + reader.getBlockCount() + " blocks (" + reader.getHeadingCount() + " headings, " +
+                           reader.getTableCount() + " tables) from " + filename + " in " +
+                           formatDuration(System.currentTimeMillis() - startTime));
+    }
+
+    /**
+     * Extract content from PowerPoint files with POI, one block per slide including tables and speaker notes
+     */
+    @SuppressWarnings("try") // registrations only need closing
+    private void extractPowerPointContent(ContentSource source, String filename, Document document, Consumer<DocumentContent> sink) throws IOException {
+        long startTime = System.currentTimeMillis();
+        int slideCount = 0;
+
+        // SlideShowFactory picks HSLF for .ppt and XSLF for .pptx
+        try (InputStream stream = source.open();
+             ExtractionTimeout.Registration closeOnTimeout = ExtractionTimeout.closeOnTimeout(stream);
+             SlideShow<?, ?> slideShow = SlideShowFactory.create(stream)) {
+            for (Slide<?, ?> slide : slideShow.getSlides()) {
+                StringBuilder text = new StringBuilder();
+                appendShapeText(slide, text);
+
+                Notes<?, ?> notes = slide.getNotes();
+                if (notes != null) {
+                    StringBuilder notesText = new StringBuilder();
+                    appendShapeText(notes, notesText);
+                    if (!notesText.toString().isBlank()) {
+                        text.append("\nSpeaker notes:\n").append(notesText);
+                    }
+                }
+
+                String slideText = text.toString().trim();
+                if (slideText.isEmpty()) {
+                    continue;
+                }
+                DocumentContent content = new DocumentContent();
+                content.setDocument(document);
+                content.setContent(slideText);
+                content.setSlideNumber(slide.getSlideNumber());
+                content.setSectionTitle("Slide " + slide.getSlideNumber());
+                sink.accept(content);
+                slideCount++;
+            }
+        }
+
+        System.out.println("📊 Extracted " + slideCount + " slides from " + filename + " in " +
+                           formatDuration(System.currentTimeMillis() - startTime));
+    }
+
+    /**
+     * Append the text of every text box, table and group on a slide (or notes page), skipping
+     * slide number, date, header and footer placeholders
+     */
+    private void appendShapeText(ShapeContainer<?, ?> container, StringBuilder text) {
+        for (Shape<?, ?> shape : container) {
+            if (shape instanceof GroupShape) {
+                appendShapeText((GroupShape<?, ?>) shape, text);
+            } else if (shape instanceof TableShape) {
+                TableShape<?, ?> table = (TableShape<?, ?>) shape;
+                for (int row = 0; row < table.getNumberOfRows(); row++) {
+                    List<String> cells = new ArrayList<>();
+                    for (int column = 0; column < table.getNumberOfColumns(); column++) {
+                        TableCell<?, ?> cell = table.getCell(row, column);
+                        String cellText = cell != null ? cell.getText() : null;
+                        if (cellText != null && !cellText.isBlank()) {
+                            cells.add(cellText.trim());
+                        }
+                    }
+                    if (!cells.isEmpty()) {
+                        text.append(String.join(" | ", cells)).append("\n");
+                    }
+                }
+            } else if (shape instanceof TextShape) {
+                TextShape<?, ?> textShape = (TextShape<?, ?>) shape;
+                Placeholder placeholder = textShape.getPlaceholder();
+                if (placeholder == Placeholder.SLIDE_NUMBER || placeholder == Placeholder.DATETIME
+                        || placeholder == Placeholder.HEADER || placeholder == Placeholder.FOOTER) {
+                    continue;
+                }
+                String shapeText = textShape.getText();
+                if (shapeText != null && !shapeText.isBlank()) {
+                    text.append(shapeText.trim()).append("\n");
+                }
+            }
+        }
+    }
+
+    /**
+     * Extract content using Apache Tika (generic method), one block per chunk of text
+     */
+    private void extractGenericContent(ContentSource source, String filename, Document document, Consumer<DocumentContent> sink) throws IOException, TikaException, SAXException {
+        AtomicInteger parts = new AtomicInteger();
+        streamWithTika(source, filename, (text, slide) -> {
+            int part = parts.incrementAndGet();
+            DocumentContent content = new DocumentContent();
+            content.setDocument(document);
+            content.setContent(text.trim());
+            if (slide > 0) {
+                // Presentations keep their slide numbers, as with the dedicated PowerPoint extractor
+                content.setSlideNumber(slide);
+                content.setSectionTitle("Slide " + slide);
+            } else {
+                content.setSectionTitle(part == 1 ? "Document Content" : "Document Content (part " + part + ")");
+            }
+            sink.accept(content);
+        });
+    }
+
+    /**
+     * Stream a file through Tika, handing on bounded chunks of text as the parser produces them
+     *
+     * Stops (keeping what was extracted so far) at the write limit or when the parse timeout passes.
+     */
+    private void streamWithTika(ContentSource source, String filename, ChunkingContentHandler.ChunkListener listener) throws IOException, TikaException, SAXException {
+        Metadata metadata = new Metadata();
+        metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, filename);
+        Parser parser = tika.getParser();
+        ParseContext context = new ParseContext();
+        context.set(Parser.class, parser);
+
+        ChunkingContentHandler handler = new ChunkingContentHandler(tikaChunkChars, tikaWriteLimitChars, listener);
+        try (InputStream stream = source.open()) {
+            // Parsers don't check for interrupts, so a runaway parse is stopped by closing its input
+            Closeable input = stream;
+            ScheduledFuture<?> watchdog = extractionWatchdog.schedule(() -> {
+                handler.abort("Parse timeout of " + tikaParseTimeoutSeconds + "s reached");
+                try {
+                    input.close();
+                } catch (IOException ignored) {
+                    // the parse thread sees the failure
+                }
+            }, tikaParseTimeoutSeconds, TimeUnit.SECONDS);
+            try {
+                parser.parse(stream, new BodyContentHandler(handler), metadata, context);
+            } catch (IOException | SAXException | TikaException e) {
+                if (!handler.isStopped()) {
+                    throw e;
+                }
+            } finally {
+                watchdog.cancel(false);
+            }
+            handler.flush();
+        }
+
+        if (handler.isStopped()) {
+            System.err.println("⚠️ " + filename + ": " + handler.getStopReason() + ", keeping the first " +
+                               handler.getCharactersWritten() + " characters");
+        }
+    }
+
+    private static String getFileExtension(String filename) {
+        if (filename == null || filename.lastIndexOf(".") == -1) {
+            return "";
+        }
+        return filename.substring(filename.lastIndexOf("."));
+    }
+
+    private static String formatDuration(long milliseconds) {
+        if (milliseconds < 1000) return milliseconds + "ms";
+        if (milliseconds < 60000) return (milliseconds / 1000) + "s";
+        long minutes = milliseconds / 60000;
+        long seconds = (milliseconds % 60000) / 1000;
+        return minutes + "m " + seconds + "s";
+    }
+
+    /**
+     * Extraction failed part way through a file; the blocks handed on before the failure are kept
+     */
+    static class ExtractionTruncatedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ExtractionTruncatedException(String filename, int blocks, Throwable cause) {
+            super("Extraction of " + filename + " failed after " + blocks + " blocks: " + cause.getMessage(), cause);
+        }
+
+        ExtractionTruncatedException(String message) {
+            super(message);
+        }
+    }
+}
@@ -3,28 +3,53 @@ package com.smartstudy.service;
 import com.smartstudy.model.Document;
 import com.smartstudy.model.DocumentContent;
 import com.smartstudy.model.Document.DocumentStatus;
+import com.smartstudy.model.IngestionJob;
+import com.smartstudy.model.IngestionJob.JobType;
 import com.smartstudy.repository.DocumentContentRepository;
 import com.smartstudy.repository.DocumentRepository;
-import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.text.PDFTextStripper;
-import org.apache.poi.hwpf.HWPFDocument;
-import org.apache.poi.hwpf.extractor.WordExtractor;
-import org.apache.poi.xwpf.usermodel.XWPFDocument;
-import org.apache.poi.xwpf.usermodel.XWPFParagraph;
-import org.apache.tika.Tika;
-import org.apache.tika.exception.TikaException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.zip.ZipFile;
 
 /**
  * Service for processing uploaded documents and extracting content
@@ -41,70 +66,585 @@ public class DocumentProcessingService {
     @Autowired
     private SearchService searchService;
     
-    private final Tika tika = new Tika();
+    @Autowired
+    private IngestionExecutor ingestionExecutor;
+    
+    @Autowired
+    private IngestionJobService ingestionJobService;
+    
+    @Autowired
+    private PdfMemoryBudget pdfMemoryBudget;
+    
+    @Autowired
+    private ContentChunker contentChunker;
+    
+    @Autowired
+    private BoilerplateStripper boilerplateStripper;
+    
+    @Autowired
+    private KeyphraseExtractor keyphraseExtractor;
+    
+    @Autowired
+    private IngestionPipeline ingestionPipeline;
+    
+    @Autowired
+    private ExtractionWorkerPool extractionWorkerPool;
+    
+    @Autowired
+    private Environment environment;
+    
+    private ContentExtractor contentExtractor;
+    
+    @Value("${ingestion.zip.entry-concurrency:4}")
+    private int zipEntryConcurrency;
+    
+    @Value("${ingestion.zip.entry-threads:0}")
+    private int zipEntryThreads;
+    
+    private ExecutorService zipEntryPool;
+    
+    private ScheduledExecutorService extractionWatchdog;
+    
+    @Value("${ingestion.timeout.document-seconds:1800}")
+    private long documentTimeoutSeconds;
+    
+    @Value("${ingestion.timeout.entry-seconds:300}")
+    private long entryTimeoutSeconds;
+    
+    @Value("${ingestion.persist.batch-size:50}")
+    private int persistBatchSize;
+    
+    @Value("${ingestion.jobs.enabled:true}")
+    private boolean jobsEnabled;
+    
+    @Value("${ingestion.jobs.max-attempts:3}")
+    private int maxJobAttempts;
+    
+    /**
+     * Create the extractor, the pool that ZIP entries are extracted on, and the watchdog enforcing time limits
+     */
+    @PostConstruct
+    public void startExtractionPool() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        zipEntryPool = Executors.newFixedThreadPool(zipEntryThreads > 0 ? zipEntryThreads : Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread thread = new Thread(runnable, "zip-entry-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        extractionWatchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "extraction-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        contentExtractor = new ContentExtractor(environment, pdfMemoryBudget, extractionWatchdog);
+    }
+    
+    private boolean isolated() {
+        return extractionWorkerPool.isEnabled();
+    }
+    
+    @PreDestroy
+    public void stopExtractionPool() {
+        contentExtractor.close();
+        zipEntryPool.shutdownNow();
+        extractionWatchdog.shutdownNow();
+    }
     
     /**
-     * Process a document asynchronously
+     * Queue a document for processing and hand it to the ingestion executor if there is room
      */
-    @Async
     public void processDocumentAsync(Document document) {
+        ingestionJobService.enqueue(document.getId(), JobType.PROCESS);
+        dispatchJobs();
+    }
+    
+    /**
+     * Re-process a document whose file was replaced, via the ingestion job queue
+     */
+    public void reprocessDocumentAsync(Document document) {
+        ingestionJobService.enqueue(document.getId(), JobType.REPROCESS);
+        dispatchJobs();
+    }
+    
+    /**
+     * Queue documents left in PROCESSING by an earlier run that had no job table
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recoverInterruptedDocuments() {
+        if (!jobsEnabled || !ingestionJobService.canRunJobs()) {
+            return;
+        }
         try {
-            System.out.println("🔄 Starting processing for document: " + document.getOriginalFilename());
-            
-            // Update status to processing
-            updateDocumentStatus(document.getId(), DocumentStatus.PROCESSING);
-            
-            List<DocumentContent> extractedContent = new ArrayList<>();
+            ingestionJobService.recoverOrphanedDocuments();
+        } catch (Exception e) {
+            System.err.println("⚠️ Could not recover interrupted documents: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Claim queued (or abandoned) ingestion jobs for as many free slots as the local executor has
+     */
+    @Scheduled(fixedDelayString = "${ingestion.jobs.poll-interval-ms:2000}")
+    public void dispatchJobs() {
+        if (!jobsEnabled || !ingestionJobService.canRunJobs()) {
+            return;
+        }
+        List<IngestionJob> jobs;
+        try {
+            jobs = ingestionJobService.claim(ingestionExecutor.getQueueCapacity() - ingestionExecutor.getQueueDepth());
+        } catch (Exception e) {
+            System.err.println("⚠️ Could not claim ingestion jobs: " + e.getMessage());
+            return;
+        }
+        for (IngestionJob job : jobs) {
+            Document document = documentRepository.findById(job.getDocumentId()).orElse(null);
+            if (document == null) {
+                ingestionJobService.complete(job);
+                continue;
+            }
+            try {
+                ingestionExecutor.execute(document, () -> runJob(job, document));
+            } catch (RejectedExecutionException e) {
+                ingestionJobService.release(job);
+            }
+        }
+    }
+    
+    /**
+     * Run one claimed job, recording the outcome in the job table
+     */
+    private void runJob(IngestionJob job, Document document) {
+        try {
+            if (job.getJobType() == JobType.REPROCESS) {
+                reprocessDocument(document);
+            } else {
+                processDocument(document, job);
+            }
+            ingestionJobService.complete(job);
+        } catch (Exception e) {
+            System.err.println("❌ Error processing document: " + document.getOriginalFilename() + " - " + e.getMessage());
+            if (ingestionJobService.fail(job, e.getMessage())) {
+                updateDocumentStatus(document.getId(), DocumentStatus.FAILED);
+            } else {
+                System.out.println("🔁 Ingestion job " + job.getId() + " will be retried (attempt " + job.getAttempts() + " of " + maxJobAttempts + ")");
+            }
+        }
+    }
+    
+    /**
+     * Extract, persist and index a newly uploaded document, resuming after the job's checkpoint if it has one
+     */
+    private void processDocument(Document document, IngestionJob job) throws Exception {
+        System.out.println("🔄 Starting processing for document: " + document.getOriginalFilename());
+        
+        // Update status to processing
+        updateDocumentStatus(document.getId(), DocumentStatus.PROCESSING);
+        
+        // Blocks are saved and indexed in batches as they are extracted
+        ContentBatchWriter writer = new ContentBatchWriter(document);
+        boolean pageCheckpoints = !document.getFileType().equalsIgnoreCase(".zip")
+                && getFileExtension(document.getOriginalFilename()).equalsIgnoreCase(".pdf");
+        int resumeAfterPage = 0;
+        if (job.getAttempts() > 1) {
+            resumeAfterPage = pageCheckpoints && job.getLastCompletedPage() != null ? job.getLastCompletedPage() : 0;
+            writer.resumeAfter(resumeAfterPage);
+        }
+        
+        // A run resuming from a checkpoint keeps the pages it persisted, so it goes on parsing instead of copying on top of them
+        Document identical = document.getFileHash() == null || resumeAfterPage > 0 ? null : documentRepository
+                .findFirstByFileHashAndStatusAndIdNotOrderByIdAsc(document.getFileHash(), DocumentStatus.COMPLETED, document.getId())
+                .orElse(null);
+        // Extraction is cut off at the document time limit or by a parser failing part way; whatever was extracted by then is kept
+        boolean timedOut = false;
+        String truncation = null;
+        int skippedEntries = 0;
+        try (ExtractionTimeout timeout = ExtractionTimeout.start(extractionWatchdog,
+                "Processing of " + document.getOriginalFilename(), TimeUnit.SECONDS.toMillis(documentTimeoutSeconds))) {
+            try {
+                if (identical != null) {
+                    // Same bytes were processed before: copy their blocks instead of parsing again
+                    System.out.println("♻️ Reusing extracted content of identical document " + identical.getId());
+                    copyContent(identical, document, writer);
+                } else if (document.getFileType().equalsIgnoreCase(".zip")) {
+                    // Process ZIP file
+                    skippedEntries = processZipFile(document, writer);
+                } else {
+                    // Process single file, checkpointing PDFs page by page
+                    if (pageCheckpoints) {
+                        writer.checkpointPagesTo(page -> ingestionJobService.checkpoint(job, page));
+                    }
+                    processSingleFile(document, writer, resumeAfterPage + 1);
+                }
+            } catch (ContentExtractor.ExtractionTruncatedException e) {
+                if (timeout.isExpired()) {
+                    timedOut = true;
+                } else {
+                    truncation = e.getMessage();
+                }
+            } catch (Exception e) {
+                if (!timeout.isExpired()) {
+                    writer.abandon();
+                    throw e;
+                }
+                timedOut = true;
+            }
+        }
+        try {
+            writer.finish();
+        } catch (Exception e) {
+            writer.abandon();
+            throw e;
+        }
+        
+        if (writer.getWrittenCount() > 0 && (timedOut || truncation != null || skippedEntries > 0)) {
+            updateDocumentStatus(document.getId(), DocumentStatus.PARTIAL);
+            System.out.println("⚠️ Partially processed document: " + document.getOriginalFilename() + " (Extracted " +
+                               writer.getWrittenCount() + " content blocks" + (timedOut ? " before the " +
+                               formatDuration(TimeUnit.SECONDS.toMillis(documentTimeoutSeconds)) + " time limit" : "") +
+                               (truncation != null ? " before extraction failed: " + truncation : "") +
+                               (skippedEntries > 0 ? ", " + skippedEntries + " archive entries skipped" : "") + ")");
+        } else if (writer.getWrittenCount() > 0) {
+            // Update document status to completed
+            updateDocumentStatus(document.getId(), DocumentStatus.COMPLETED);
             
+            System.out.println("✅ Successfully processed document: " + document.getOriginalFilename() + 
+                             " (Extracted " + writer.getWrittenCount() + " content blocks in " + writer.getBatchCount() + " batches)");
+        } else if (truncation != null) {
+            throw new RuntimeException(truncation);
+        } else if (timedOut) {
+            throw new RuntimeException("No content was extracted within the " +
+                                       formatDuration(TimeUnit.SECONDS.toMillis(documentTimeoutSeconds)) + " time limit");
+        } else {
+            throw new RuntimeException("No content could be extracted from the document");
+        }
+    }
+    
+    /**
+     * Re-process a document whose file was replaced, rewriting only the blocks whose content changed
+     */
+    private void reprocessDocument(Document document) throws Exception {
+        long startTime = System.currentTimeMillis();
+        System.out.println("🔄 Starting incremental re-processing for document: " + document.getOriginalFilename());
+        updateDocumentStatus(document.getId(), DocumentStatus.PROCESSING);
+        
+        // Unlike a first run, a re-run that runs out of time or skips archive entries fails: blocks it
+        // didn't reach would be deleted
+        List<DocumentContent> extractedContent = new ArrayList<>();
+        int skippedEntries = 0;
+        try (ExtractionTimeout timeout = ExtractionTimeout.start(extractionWatchdog,
+                "Re-processing of " + document.getOriginalFilename(), TimeUnit.SECONDS.toMillis(documentTimeoutSeconds))) {
             if (document.getFileType().equalsIgnoreCase(".zip")) {
-                // Process ZIP file
-                extractedContent = processZipFile(document);
+                skippedEntries = processZipFile(document, extractedContent::add);
+            } else {
+                processSingleFile(document, extractedContent::add);
+            }
+            timeout.check();
+        }
+        if (skippedEntries > 0) {
+            throw new RuntimeException(skippedEntries + " archive entries could not be extracted; keeping the existing content");
+        }
+        if (extractedContent.isEmpty()) {
+            throw new RuntimeException("No content could be extracted from the document");
+        }
+        applyContentHashes(extractedContent);
+        KeyphraseExtractor.DocumentPhrases documentPhrases = keyphraseExtractor.newDocumentPhrases();
+        for (DocumentContent content : extractedContent) {
+            keyphraseExtractor.annotate(content);
+            documentPhrases.add(content.getKeyphrases());
+        }
+        
+        // Match new blocks to existing ones by their location within the document
+        Map<String, DocumentContent> existingByLocation = new HashMap<>();
+        List<DocumentContent> existingContent = new ArrayList<>(documentContentRepository
+                .findByDocument_IdOrderByPageNumberAscSlideNumberAsc(document.getId()));
+        // Insertion order matches extraction order, which the occurrence counter in the keys relies on
+        existingContent.sort(Comparator.comparing(DocumentContent::getId));
+        List<String> existingKeys = locationKeys(existingContent);
+        for (int i = 0; i < existingContent.size(); i++) {
+            existingByLocation.put(existingKeys.get(i), existingContent.get(i));
+        }
+        
+        // Every index entry carries the file name, so a replacement under a new name re-indexes unchanged blocks too
+        boolean renamed = searchService.hasStaleFilename(document);
+        int unchanged = 0;
+        int updated = 0;
+        int added = 0;
+        List<String> newKeys = locationKeys(extractedContent);
+        for (int i = 0; i < extractedContent.size(); i++) {
+            DocumentContent fresh = extractedContent.get(i);
+            DocumentContent existing = existingByLocation.remove(newKeys.get(i));
+            
+            if (existing != null && fresh.getContentHash().equals(existing.getContentHash())) {
+                if (renamed) {
+                    searchService.updateDocumentContent(document, existing);
+                }
+                unchanged++;
+            } else if (existing != null) {
+                existing.setContent(fresh.getContent());
+                existing.setContentHash(fresh.getContentHash());
+                existing.setTopic(fresh.getTopic());
+                existing.setKeyphrases(fresh.getKeyphrases());
+                existing.setSectionTitle(fresh.getSectionTitle());
+                existing.setDocument(document);
+                searchService.updateDocumentContent(document, documentContentRepository.save(existing));
+                updated++;
             } else {
-                // Process single file
-                extractedContent = processSingleFile(document);
+                searchService.indexDocumentContent(document, documentContentRepository.save(fresh));
+                added++;
             }
+        }
+        
+        // Whatever is left no longer exists in the new file
+        for (DocumentContent removed : existingByLocation.values()) {
+            searchService.deleteDocumentContent(document, removed.getId());
+        }
+        documentContentRepository.deleteAll(existingByLocation.values());
+        searchService.commitIndex();
+        updateDocumentKeyphrases(document.getId(), documentPhrases.top());
+        
+        updateDocumentStatus(document.getId(), DocumentStatus.COMPLETED);
+        System.out.println("✅ Incrementally re-processed " + document.getOriginalFilename() + " in " +
+                           formatDuration(System.currentTimeMillis() - startTime) + ": " + unchanged + " unchanged, " +
+                           updated + " updated, " + added + " added, " + existingByLocation.size() + " removed");
+    }
+    
+    /**
+     * Collects extracted blocks into fixed-size batches and passes each through the enrich, persist and
+     * index stages of the ingestion pipeline, so parsing of the next batch overlaps with writing this one
+     *
+     * Batches of one document are persisted in extraction order; indexing may finish out of order.
+     */
+    private class ContentBatchWriter implements Consumer<DocumentContent> {
+        private final Document document;
+        private List<DocumentContent> batch = new ArrayList<>();
+        private final KeyphraseExtractor.DocumentPhrases documentPhrases = keyphraseExtractor.newDocumentPhrases();
+        private final AtomicInteger writtenCount = new AtomicInteger();
+        private final AtomicInteger batchCount = new AtomicInteger();
+        private volatile boolean indexingFailed;
+        private IntConsumer checkpoint;
+        private CompletableFuture<Void> lastPersisted = CompletableFuture.completedFuture(null);
+        private final List<CompletableFuture<Void>> pendingIndexing = new ArrayList<>();
+        
+        private ContentBatchWriter(Document document) {
+            this.document = document;
+        }
+        
+        /**
+         * Report the last page known to be fully persisted after each batch (content must arrive in page order)
+         */
+        private void checkpointPagesTo(IntConsumer checkpoint) {
+            this.checkpoint = checkpoint;
+        }
+        
+        /**
+         * Pick up after an interrupted attempt: keep blocks up to the checkpointed page, drop the rest,
+         * and re-index the kept blocks since uncommitted index entries were lost
+         */
+        private void resumeAfter(int lastCompletedPage) throws IOException {
+            int dropped = documentContentRepository.deleteByDocumentIdAfterPage(document.getId(), lastCompletedPage);
+            searchService.deleteDocumentFromIndex(document.getId());
             
-            // Save extracted content to database
-            if (!extractedContent.isEmpty()) {
-                documentContentRepository.saveAll(extractedContent);
-                
-                // Index the content for search
+            Pageable pageable = PageRequest.of(0, Math.max(1, persistBatchSize));
+            Slice<DocumentContent> slice;
+            do {
+                slice = documentContentRepository.findByDocument_IdOrderByIdAsc(document.getId(), pageable);
+                for (DocumentContent content : slice) {
+                    documentPhrases.add(content.getKeyphrases());
+                    try {
+                        searchService.indexDocumentContent(document, content);
+                    } catch (Exception e) {
+                        indexingFailed = true;
+                        System.err.println("⚠️ Warning: Failed to index content for search: " + e.getMessage());
+                    }
+                    writtenCount.incrementAndGet();
+                }
+                pageable = slice.nextPageable();
+            } while (slice.hasNext() && !indexingFailed);
+            
+            System.out.println("⏩ Resuming " + document.getOriginalFilename() + " after page " + lastCompletedPage +
+                               " (" + writtenCount.get() + " blocks kept, " + dropped + " discarded)");
+        }
+        
+        @Override
+        public void accept(DocumentContent content) {
+            batch.add(content);
+            if (batch.size() >= Math.max(1, persistBatchSize)) {
+                flush();
+            }
+        }
+        
+        /**
+         * Hand the current batch to the pipeline; blocks while the pipeline is full
+         */
+        private void flush() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            List<DocumentContent> blocks = batch;
+            batch = new ArrayList<>();
+            int size = blocks.size();
+            
+            CompletableFuture<Void> enriched = ingestionPipeline.enrich().submit(size, () -> {
+                applyContentHashes(blocks);
+                blocks.forEach(keyphraseExtractor::annotate);
+            });
+            
+            CompletableFuture<Void> previous = lastPersisted;
+            CompletableFuture<Void> persisted = ingestionPipeline.persist().submit(size, () -> {
+                enriched.join();
+                // Keep insertion order equal to extraction order, and checkpoints monotonic
+                previous.join();
+                blocks.forEach(content -> documentPhrases.add(content.getKeyphrases()));
+                documentContentRepository.saveAll(blocks);
+                writtenCount.addAndGet(size);
+                batchCount.incrementAndGet();
+                if (checkpoint != null) {
+                    // More chunks of the batch's last page may still be on their way
+                    Integer lastPage = blocks.get(size - 1).getPageNumber();
+                    if (lastPage != null && lastPage > 1) {
+                        checkpoint.accept(lastPage - 1);
+                    }
+                }
+            });
+            lastPersisted = persisted;
+            
+            pendingIndexing.removeIf(CompletableFuture::isDone);
+            pendingIndexing.add(ingestionPipeline.index().submit(size, () -> {
+                persisted.join();
+                if (indexingFailed) {
+                    return;
+                }
                 try {
-                    for (DocumentContent content : extractedContent) {
+                    for (DocumentContent content : blocks) {
                         searchService.indexDocumentContent(document, content);
                     }
-                    searchService.commitIndex();
-                    System.out.println("🔍 Indexed " + extractedContent.size() + " content blocks for search");
-                    
-                    // Force a full reindex to ensure all content is properly indexed
-                    System.out.println("🔄 Forcing full reindex to ensure all content is available...");
-                    searchService.indexAllDocuments();
-                    System.out.println("✅ Full reindex completed");
-                    
                 } catch (Exception e) {
+                    indexingFailed = true;
                     System.err.println("⚠️ Warning: Failed to index content for search: " + e.getMessage());
                 }
-                
-                // Update document status to completed
-                updateDocumentStatus(document.getId(), DocumentStatus.COMPLETED);
-                
-                System.out.println("✅ Successfully processed document: " + document.getOriginalFilename() + 
-                                 " (Extracted " + extractedContent.size() + " content blocks)");
-            } else {
-                throw new RuntimeException("No content could be extracted from the document");
+            }));
+        }
+        
+        /**
+         * Flush the last partial batch, wait for the pipeline, store the document keyphrases and make the indexed blocks searchable
+         */
+        private void finish() throws IOException {
+            flush();
+            await(lastPersisted);
+            for (CompletableFuture<Void> indexing : pendingIndexing) {
+                await(indexing);
             }
-            
-        } catch (Exception e) {
-            System.err.println("❌ Error processing document: " + document.getOriginalFilename() + " - " + e.getMessage());
-            updateDocumentStatus(document.getId(), DocumentStatus.FAILED);
+            updateDocumentKeyphrases(document.getId(), documentPhrases.top());
+            if (writtenCount.get() > 0 && !indexingFailed) {
+                searchService.commitIndex();
+                System.out.println("🔍 Indexed " + writtenCount.get() + " content blocks for search");
+            }
+        }
+        
+        /**
+         * Wait for batches already handed to the pipeline after extraction failed, so a retry doesn't race them
+         */
+        private void abandon() {
+            try {
+                lastPersisted.exceptionally(e -> null).join();
+                CompletableFuture.allOf(pendingIndexing.toArray(CompletableFuture<?>[]::new)).exceptionally(e -> null).join();
+            } catch (CancellationException e) {
+                // Pipeline shut down
+            }
+        }
+        
+        private void await(CompletableFuture<Void> future) throws IOException {
+            try {
+                future.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                if (cause instanceof Error error) {
+                    throw error;
+                }
+                throw new IOException(cause);
+            }
+        }
+        
+        private int getWrittenCount() { return writtenCount.get(); }
+        
+        private int getBatchCount() { return batchCount.get(); }
+    }
+    
+    /**
+     * Copy the blocks of an already processed document to another document, one page of rows at a time
+     */
+    private void copyContent(Document source, Document target, Consumer<DocumentContent> sink) {
+        Pageable pageable = PageRequest.of(0, Math.max(1, persistBatchSize));
+        Slice<DocumentContent> slice;
+        do {
+            slice = documentContentRepository.findByDocument_IdOrderByIdAsc(source.getId(), pageable);
+            for (DocumentContent original : slice) {
+                DocumentContent copy = new DocumentContent();
+                copy.setDocument(target);
+                copy.setPageNumber(original.getPageNumber());
+                copy.setSlideNumber(original.getSlideNumber());
+                copy.setContent(original.getContent());
+                copy.setTopic(original.getTopic());
+                copy.setSectionTitle(original.getSectionTitle());
+                copy.setContentHash(original.getContentHash());
+                copy.setKeyphrases(original.getKeyphrases());
+                copy.setWordCount(original.getWordCount());
+                sink.accept(copy);
+            }
+            pageable = slice.nextPageable();
+        } while (slice.hasNext());
+    }
+    
+    /**
+     * Set the SHA-256 content hash of each extracted block that doesn't have one yet
+     */
+    private void applyContentHashes(List<DocumentContent> contentList) {
+        for (DocumentContent content : contentList) {
+            if (content.getContentHash() != null) {
+                continue;
+            }
+            content.setContentHash(hashContent(content.getContent()));
+        }
+    }
+    
+    /**
+     * SHA-256 of a block's text, hex-encoded
+     */
+    private String hashContent(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
         }
     }
     
+    /**
+     * Location keys (page/slide/section plus occurrence) identifying each block within its document
+     */
+    private List<String> locationKeys(List<DocumentContent> contentList) {
+        Map<String, Integer> occurrences = new HashMap<>();
+        List<String> keys = new ArrayList<>();
+        for (DocumentContent content : contentList) {
+            String location = content.getPageNumber() + "|" + content.getSlideNumber() + "|" + content.getSectionTitle();
+            int occurrence = occurrences.merge(location, 1, Integer::sum);
+            keys.add(location + "|" + occurrence);
+        }
+        return keys;
+    }
+    
     /**
      * Process a ZIP file containing multiple documents
+     *
+     * @return number of supported entries that were not processed (failed, timed out, or not reached in time)
      */
-    private List<DocumentContent> processZipFile(Document document) throws IOException {
-        List<DocumentContent> allContent = new ArrayList<>();
+    @SuppressWarnings("try") // registrations only need closing
+    private int processZipFile(Document document, Consumer<DocumentContent> sink) throws IOException {
+        int totalBlocks = 0;
+        int skippedEntries = 0;
         Path zipPath = Paths.get(document.getFilePath());
         
         System.out.println("📦 Processing ZIP file: " + document.getOriginalFilename());
@@ -123,353 +663,237 @@ public class DocumentProcessingService {
             System.err.println("⚠️ Warning: Large ZIP file detected (" + formatFileSize(zipFileSize) + "). Processing may take a long time.");
         }
         
-        // Add timeout protection for large files
-        long maxProcessingTime = 30 * 60 * 1000; // 30 minutes max
+        // The document's time limit covers the whole archive; each entry also has a limit of its own,
+        // so one pathological file can't use up the rest of the archive's time
+        ExtractionTimeout documentTimeout = ExtractionTimeout.current();
+        long entryTimeoutMs = TimeUnit.SECONDS.toMillis(entryTimeoutSeconds);
         long startTime = System.currentTimeMillis();
         
-        try (ZipInputStream zipInputStream = new ZipInputStream(Files.newInputStream(zipPath))) {
-            ZipEntry entry;
+        // ZipFile reads the central directory, so entries can be listed without inflating them
+        // and opened independently (and concurrently) afterwards
+        try (ZipFile zipFile = new ZipFile(zipPath.toFile())) {
             int processedFiles = 0;
             int totalFiles = 0;
             int maxFilesToProcess = 100; // Limit to prevent infinite processing
+            boolean timedOut = false;
             
-            // First pass: count total files (with limit)
             List<ZipEntry> entries = new ArrayList<>();
-            while ((entry = zipInputStream.getNextEntry()) != null && totalFiles < maxFilesToProcess) {
-                if (!entry.isDirectory() && isSupportedFileType(entry.getName())) {
+            Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+            while (zipEntries.hasMoreElements() && totalFiles < maxFilesToProcess) {
+                ZipEntry entry = zipEntries.nextElement();
+                totalFiles++;
+                if (entry.isDirectory()) {
+                    System.out.println("    📁 Skipping directory: " + entry.getName());
+                } else if (isSupportedFileType(entry.getName())) {
                     entries.add(entry);
+                } else {
+                    System.out.println("    ⚠️ Skipping unsupported file type: " + entry.getName());
                 }
-                totalFiles++;
-                zipInputStream.closeEntry();
             }
             
-            System.out.println("🔍 Found " + totalFiles + " total entries, processing " + entries.size() + " supported files");
-            System.out.println("⏱️ Starting processing with 30-minute timeout...");
+            System.out.println("🔍 Found " + totalFiles + " total entries, processing " + entries.size()
+                    + " supported files, up to " + zipEntryConcurrency + " at a time");
+            System.out.println("⏱️ Starting processing with a " + formatDuration(entryTimeoutMs) + " limit per entry...");
             
-            // Second pass: process files
-            try (ZipInputStream processZipStream = new ZipInputStream(Files.newInputStream(zipPath))) {
-                for (int i = 0; i < entries.size(); i++) {
-                    // Check timeout
-                    if (System.currentTimeMillis() - startTime > maxProcessingTime) {
-                        System.err.println("⏰ Processing timeout reached (30 minutes). Stopping.");
-                        break;
+            // Submit entries, keeping at most zipEntryConcurrency of this archive in flight
+            Semaphore permits = new Semaphore(Math.max(1, zipEntryConcurrency));
+            List<Future<List<DocumentContent>>> results = new ArrayList<>();
+            try {
+                for (ZipEntry entry : entries) {
+                    try (ExtractionTimeout.Registration interruptible = ExtractionTimeout.interruptibleWait()) {
+                        permits.acquire();
                     }
-                    
-                    entry = processZipStream.getNextEntry();
-                    if (entry == null) break;
-                    
-                    String entryName = entry.getName();
-                    long entrySize = entry.getSize();
-                    
-                    System.out.println("  📄 [" + (i + 1) + "/" + entries.size() + "] Processing: " + entryName);
-                    System.out.println("     📊 Entry size: " + formatFileSize(entrySize));
-                    
-                    if (!entry.isDirectory() && isSupportedFileType(entryName)) {
-                        try {
-                            // Extract file to temporary location
-                            Path tempFile = extractZipEntry(processZipStream, entryName);
-                            
-                            try {
-                                // Process the extracted file with timeout
-                                List<DocumentContent> fileContent = extractContentFromFile(tempFile, entryName, document);
-                                allContent.addAll(fileContent);
-                                processedFiles++;
-                                
-                                // Calculate progress
-                                double progressPercent = (double) (i + 1) / entries.size() * 100;
-                                long elapsedTime = System.currentTimeMillis() - startTime;
-                                long remainingTime = maxProcessingTime - elapsedTime;
-                                
-                                System.out.println("    ✅ Successfully processed: " + entryName);
-                                System.out.println("       📊 Extracted " + fileContent.size() + " content blocks");
-                                System.out.println("       📈 Progress: " + String.format("%.1f", progressPercent) + "%");
-                                System.out.println("       ⏱️ Elapsed: " + formatDuration(elapsedTime) + " | Remaining: " + formatDuration(remainingTime));
-                                
-                            } catch (Exception e) {
-                                System.err.println("    ❌ Error processing file " + entryName + ": " + e.getMessage());
-                                // Continue with other files instead of failing completely
+                    try {
+                        results.add(zipEntryPool.submit(() -> {
+                            try (ExtractionTimeout entryTimeout = ExtractionTimeout.start(extractionWatchdog,
+                                    "Entry " + entry.getName(), entryTimeoutMs, documentTimeout)) {
+                                return extractZipEntryContent(zipFile, entry, document);
                             } finally {
-                                // Clean up temporary file
-                                try {
-                                    Files.deleteIfExists(tempFile);
-                                } catch (Exception e) {
-                                    System.err.println("    ⚠️ Warning: Could not delete temp file: " + e.getMessage());
-                                }
+                                permits.release();
                             }
-                        } catch (Exception e) {
-                            System.err.println("    ❌ Error extracting file " + entryName + ": " + e.getMessage());
-                            // Continue with other files
+                        }));
+                    } catch (RuntimeException e) {
+                        permits.release();
+                        throw e;
+                    }
+                }
+                
+                // Collect in archive order so content blocks keep a stable order; a stuck entry is
+                // stopped by its own watchdog, or at the latest by the document's
+                for (int i = 0; i < results.size(); i++) {
+                    String entryName = entries.get(i).getName();
+                    try {
+                        List<DocumentContent> fileContent;
+                        try (ExtractionTimeout.Registration interruptible = ExtractionTimeout.interruptibleWait()) {
+                            fileContent = results.get(i).get();
                         }
-                    } else if (entry.isDirectory()) {
-                        System.out.println("    📁 Skipping directory: " + entryName);
-                    } else {
-                        System.out.println("    ⚠️ Skipping unsupported file type: " + entryName);
+                        fileContent.forEach(sink);
+                        totalBlocks += fileContent.size();
+                        processedFiles++;
+                        
+                        // Calculate progress
+                        double progressPercent = (double) (i + 1) / entries.size() * 100;
+                        long elapsedTime = System.currentTimeMillis() - startTime;
+                        
+                        System.out.println("    ✅ Successfully processed: " + entryName);
+                        System.out.println("       📊 Extracted " + fileContent.size() + " content blocks");
+                        System.out.println("       📈 Progress: " + String.format("%.1f", progressPercent) + "%");
+                        System.out.println("       ⏱️ Elapsed: " + formatDuration(elapsedTime));
+                    } catch (ExecutionException e) {
+                        if (e.getCause() instanceof ExtractionTimeout.ExtractionTimeoutException) {
+                            System.err.println("    ⏰ Skipped " + entryName + ": " + e.getCause().getMessage());
+                        } else {
+                            System.err.println("    ❌ Error processing file " + entryName + ": " + e.getCause().getMessage());
+                        }
+                        // Continue with other files instead of failing completely
                     }
-                    
-                    processZipStream.closeEntry();
+                }
+            } catch (InterruptedException e) {
+                if (documentTimeout == null || !documentTimeout.isExpired()) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while processing ZIP file", e);
+                }
+                // Keep the entries collected so far
+                timedOut = true;
+            } finally {
+                // Stop anything still running before the archive is closed
+                for (Future<List<DocumentContent>> result : results) {
+                    result.cancel(true);
                 }
             }
             
+            if (timedOut) {
+                System.err.println("⏰ Document time limit reached. Stopping.");
+            }
+            skippedEntries = entries.size() - processedFiles;
+            
             long totalTime = System.currentTimeMillis() - startTime;
             System.out.println("📊 ZIP processing complete!");
             System.out.println("   ✅ Processed: " + processedFiles + "/" + entries.size() + " files successfully");
-            System.out.println("   📊 Total content blocks: " + allContent.size());
+            System.out.println("   📊 Total content blocks: " + totalBlocks);
             System.out.println("   ⏱️ Total processing time: " + formatDuration(totalTime));
             
-            if (totalTime >= maxProcessingTime) {
+            if (timedOut) {
                 System.out.println("   ⚠️ Processing stopped due to timeout");
             }
-        } catch (Exception e) {
+        } catch (IOException e) {
             System.err.println("❌ Error processing ZIP file: " + e.getMessage());
             e.printStackTrace();
             throw new IOException("Failed to process ZIP file: " + e.getMessage(), e);
         }
         
-        if (allContent.isEmpty()) {
+        if (totalBlocks == 0) {
             System.err.println("⚠️ Warning: No content could be extracted from ZIP file");
         }
-        
-        return allContent;
+        return skippedEntries;
     }
     
     /**
-     * Process a single file
+     * Extract the content of one ZIP entry, parsing straight from the entry stream where the parser allows it
      */
-    private List<DocumentContent> processSingleFile(Document document) throws IOException {
-        Path filePath = Paths.get(document.getFilePath());
-        return extractContentFromFile(filePath, document.getOriginalFilename(), document);
-    }
-    
-    /**
-     * Extract content from a single file based on its type
-     */
-    private List<DocumentContent> extractContentFromFile(Path filePath, String filename, Document document) throws IOException {
-        String fileExtension = getFileExtension(filename).toLowerCase();
-        List<DocumentContent> contentList = new ArrayList<>();
+    private List<DocumentContent> extractZipEntryContent(ZipFile zipFile, ZipEntry entry, Document document) throws IOException {
+        String entryName = entry.getName();
+        System.out.println("  📄 Processing: " + entryName + " (" + formatFileSize(entry.getSize()) + ")");
         
-        try {
-            switch (fileExtension) {
-                case ".pdf":
-                    contentList = extractPdfContent(filePath, filename, document);
-                    break;
-                case ".doc":
-                    contentList = extractDocContent(filePath, filename, document);
-                    break;
-                case ".docx":
-                    contentList = extractDocxContent(filePath, filename, document);
-                    break;
-                case ".ppt":
-                case ".pptx":
-                    contentList = extractPowerPointContent(filePath, filename, document);
-                    break;
-                default:
-                    // Use Tika for other file types
-                    contentList = extractGenericContent(filePath, filename, document);
-                    break;
-            }
-        } catch (Exception e) {
-            System.err.println("Error extracting content from " + filename + ": " + e.getMessage());
-            // Try generic extraction as fallback
+        // PDFBox and the DOCX package reader need random access (and parallel page extraction reloads the file),
+        // so spool those to disk; so does every entry when a worker process does the parsing
+        String entryExtension = getFileExtension(entryName).toLowerCase();
+        if (isolated() || entryExtension.equals(".pdf") || entryExtension.equals(".docx")) {
+            Path tempFile = spoolToTempFile(() -> zipFile.getInputStream(entry), entryName);
             try {
-                contentList = extractGenericContent(filePath, filename, document);
-            } catch (Exception fallbackError) {
-                System.err.println("Fallback extraction also failed for " + filename + ": " + fallbackError.getMessage());
+                List<DocumentContent> contentList = new ArrayList<>();
+                ContentChunker.Stage chunks = contentChunker.open(contentList::add);
+                BoilerplateStripper.Stage pages = boilerplateStripper.open(chunks);
+                extractThroughStages(pages, chunks, () -> extractContentFromFile(tempFile, entryName, document, pages));
+                return contentList;
+            } finally {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (Exception e) {
+                    System.err.println("    ⚠️ Warning: Could not delete temp file: " + e.getMessage());
+                }
             }
         }
-        
+        List<DocumentContent> contentList = new ArrayList<>();
+        ContentChunker.Stage chunks = contentChunker.open(contentList::add);
+        BoilerplateStripper.Stage pages = boilerplateStripper.open(chunks);
+        extractThroughStages(pages, chunks, () -> contentExtractor.extract(() -> zipFile.getInputStream(entry), entryName, document, pages));
         return contentList;
     }
     
     /**
-     * Extract content from PDF files using PDFBox
+     * Process a single file
      */
-    private List<DocumentContent> extractPdfContent(Path filePath, String filename, Document document) throws IOException {
-        List<DocumentContent> contentList = new ArrayList<>();
-        
-        try (PDDocument pdfDocument = PDDocument.load(filePath.toFile())) {
-            PDFTextStripper stripper = new PDFTextStripper();
-            int totalPages = pdfDocument.getNumberOfPages();
-            
-            System.out.println("📄 Processing PDF with " + totalPages + " pages: " + filename);
-
-            // Extract text page by page
-            for (int pageNum = 1; pageNum <= totalPages; pageNum++) {
-                try {
-                    stripper.setStartPage(pageNum);
-                    stripper.setEndPage(pageNum);
-                    
-                    String pageText = stripper.getText(pdfDocument);
-                    if (pageText != null && !pageText.trim().isEmpty()) {
-                        DocumentContent content = new DocumentContent();
-                        content.setDocument(document);
-                        content.setContent(pageText.trim());
-                        content.setPageNumber(pageNum);
-                        content.setTopic(detectTopic(pageText));
-                        content.setSectionTitle("Page " + pageNum);
-                        contentList.add(content);
-                        
-                        System.out.println("  ✅ Page " + pageNum + " processed (" + pageText.trim().length() + " characters)");
-                    } else {
-                        System.out.println("  ⚠️ Page " + pageNum + " has no content");
-                        // Still create a content entry for empty pages to maintain page count
-                        DocumentContent content = new DocumentContent();
-                        content.setDocument(document);
-                        content.setContent("[Page " + pageNum + " - No text content]");
-                        content.setPageNumber(pageNum);
-                        content.setTopic("Empty Page");
-                        content.setSectionTitle("Page " + pageNum);
-                        contentList.add(content);
-                    }
-                } catch (Exception e) {
-                    System.err.println("  ❌ Error processing page " + pageNum + ": " + e.getMessage());
-                    // Create a placeholder for failed pages
-                    DocumentContent content = new DocumentContent();
-                    content.setDocument(document);
-                    content.setContent("[Page " + pageNum + " - Error processing: " + e.getMessage() + "]");
-                    content.setPageNumber(pageNum);
-                    content.setTopic("Error Page");
-                    content.setSectionTitle("Page " + pageNum);
-                    contentList.add(content);
-                }
-            }
-            
-            System.out.println("📊 Total pages processed: " + contentList.size() + " out of " + totalPages);
-        }
-        
-        return contentList;
+    private void processSingleFile(Document document, Consumer<DocumentContent> sink) throws IOException {
+        processSingleFile(document, sink, 1);
     }
     
     /**
-     * Extract content from DOC files using Apache POI
+     * Process a single file, starting at the given page for paged formats
      */
-    private List<DocumentContent> extractDocContent(Path filePath, String filename, Document document) throws IOException {
-        List<DocumentContent> contentList = new ArrayList<>();
-        
-        try (FileInputStream fis = new FileInputStream(filePath.toFile());
-             HWPFDocument docDocument = new HWPFDocument(fis)) {
-            
-            WordExtractor extractor = new WordExtractor(docDocument);
-            String text = extractor.getText();
-            
-            if (text != null && !text.trim().isEmpty()) {
-                DocumentContent content = new DocumentContent();
-                content.setDocument(document);
-                content.setContent(text.trim());
-                content.setTopic(detectTopic(text));
-                content.setSectionTitle("Document Content");
-                contentList.add(content);
-            }
+    private void processSingleFile(Document document, Consumer<DocumentContent> sink, int firstPage) throws IOException {
+        Path filePath = Paths.get(document.getFilePath());
+        // Running headers and footers are stripped per page before pages are re-chunked
+        ContentChunker.Stage chunks = contentChunker.open(sink);
+        BoilerplateStripper.Stage pages = boilerplateStripper.open(chunks);
+        extractThroughStages(pages, chunks, () -> extractContentFromFile(filePath, document.getOriginalFilename(), document, pages, firstPage));
+        if (pages.getRemovedLines() > 0) {
+            System.out.println("🧹 Removed " + pages.getRemovedLines() + " repeated header/footer lines (" +
+                               formatFileSize(pages.getRemovedChars()) + ") from " + document.getOriginalFilename());
         }
-        
-        return contentList;
     }
     
     /**
-     * Extract content from DOCX files using Apache POI
+     * Extraction into the header-stripping and re-chunking stages
      */
-    private List<DocumentContent> extractDocxContent(Path filePath, String filename, Document document) throws IOException {
-        List<DocumentContent> contentList = new ArrayList<>();
-        
-        try (FileInputStream fis = new FileInputStream(filePath.toFile());
-             XWPFDocument docxDocument = new XWPFDocument(fis)) {
-            
-            StringBuilder textBuilder = new StringBuilder();
-            int sectionCount = 0;
-            
-            for (XWPFParagraph paragraph : docxDocument.getParagraphs()) {
-                String paragraphText = paragraph.getText();
-                if (paragraphText != null && !paragraphText.trim().isEmpty()) {
-                    textBuilder.append(paragraphText).append("\n");
-                    
-                    // Create content blocks for large documents
-                    if (textBuilder.length() > 5000) {
-                        DocumentContent content = new DocumentContent();
-                        content.setDocument(document);
-                        content.setContent(textBuilder.toString().trim());
-                        content.setTopic(detectTopic(textBuilder.toString()));
-                        content.setSectionTitle("Section " + (++sectionCount));
-                        contentList.add(content);
-                        textBuilder = new StringBuilder();
-                    }
-                }
-            }
-            
-            // Add remaining content
-            if (textBuilder.length() > 0) {
-                DocumentContent content = new DocumentContent();
-                content.setDocument(document);
-                content.setContent(textBuilder.toString().trim());
-                content.setTopic(detectTopic(textBuilder.toString()));
-                content.setSectionTitle("Section " + (++sectionCount));
-                contentList.add(content);
-            }
-        }
-        
-        return contentList;
+    @FunctionalInterface
+    private interface StagedExtraction {
+        void run() throws IOException;
     }
     
     /**
-     * Extract content from PowerPoint files using Apache POI
+     * Run an extraction and hand on what the stages still hold, also when the time limit or a parser
+     * failure cuts the extraction off, so the blocks extracted before that are kept
      */
-    private List<DocumentContent> extractPowerPointContent(Path filePath, String filename, Document document) throws IOException {
-        List<DocumentContent> contentList = new ArrayList<>();
-        
+    private void extractThroughStages(BoilerplateStripper.Stage pages, ContentChunker.Stage chunks, StagedExtraction extraction) throws IOException {
         try {
-            // Use Tika for PowerPoint files as it handles them well
-            String text = tika.parseToString(filePath.toFile());
-            
-            if (text != null && !text.trim().isEmpty()) {
-                // Split by slide indicators
-                String[] slides = text.split("Slide \\d+");
-                
-                for (int i = 0; i < slides.length; i++) {
-                    String slideText = slides[i].trim();
-                    if (!slideText.isEmpty()) {
-                        DocumentContent content = new DocumentContent();
-                        content.setDocument(document);
-                        content.setContent(slideText);
-                        content.setSlideNumber(i + 1);
-                        content.setTopic(detectTopic(slideText));
-                        content.setSectionTitle("Slide " + (i + 1));
-                        contentList.add(content);
-                    }
-                }
+            extraction.run();
+        } catch (IOException | RuntimeException e) {
+            ExtractionTimeout timeout = ExtractionTimeout.current();
+            if ((timeout != null && timeout.isExpired()) || e instanceof ContentExtractor.ExtractionTruncatedException) {
+                pages.finish();
+                chunks.finish();
             }
-        } catch (Exception e) {
-            System.err.println("Error extracting PowerPoint content: " + e.getMessage());
+            throw e;
         }
-        
-        return contentList;
+        pages.finish();
+        chunks.finish();
     }
     
     /**
-     * Extract content using Apache Tika (generic method)
+     * Extract content from a single file based on its type
      */
-    private List<DocumentContent> extractGenericContent(Path filePath, String filename, Document document) throws IOException, TikaException {
-        List<DocumentContent> contentList = new ArrayList<>();
-        
-        try {
-            String text = tika.parseToString(filePath.toFile());
-            
-            if (text != null && !text.trim().isEmpty()) {
-                DocumentContent content = new DocumentContent();
-                content.setDocument(document);
-                content.setContent(text.trim());
-                content.setTopic(detectTopic(text));
-                content.setSectionTitle("Document Content");
-                contentList.add(content);
-            }
-        } catch (Exception e) {
-            System.err.println("Error extracting generic content: " + e.getMessage());
+    private void extractContentFromFile(Path filePath, String filename, Document document, Consumer<DocumentContent> sink) throws IOException {
+        extractContentFromFile(filePath, filename, document, sink, 1);
+    }
+    
+    /**
+     * Extract content from a single file, starting at the given page for PDFs
+     *
+     * With isolation enabled the file is parsed in a worker process instead of in this one.
+     */
+    private void extractContentFromFile(Path filePath, String filename, Document document, Consumer<DocumentContent> sink, int firstPage) throws IOException {
+        if (isolated()) {
+            extractionWorkerPool.extract(filePath, filename, firstPage, document, sink);
+        } else {
+            contentExtractor.extract(filePath, filename, document, sink, firstPage);
         }
-        
-        return contentList;
     }
     
     /**
-     * Extract a file from ZIP to temporary location
+     * Copy a stream (e.g. a ZIP entry) to a temporary file for parsers that need random access
      */
-    private Path extractZipEntry(ZipInputStream zipInputStream, String entryName) throws IOException {
+    private Path spoolToTempFile(ContentExtractor.ContentSource source, String entryName) throws IOException {
         // Create a unique temporary file with proper extension
         String extension = getFileExtension(entryName);
         String prefix = "extracted_" + System.currentTimeMillis() + "_";
@@ -477,13 +901,14 @@ public class DocumentProcessingService {
         
         System.out.println("    📁 Extracting to temp file: " + tempFile);
         
-        try (OutputStream outputStream = Files.newOutputStream(tempFile)) {
+        try (InputStream inputStream = source.open();
+             OutputStream outputStream = Files.newOutputStream(tempFile)) {
             byte[] buffer = new byte[32768]; // 32KB buffer for better performance
             int length;
             long totalBytes = 0;
             long lastLogTime = System.currentTimeMillis();
             
-            while ((length = zipInputStream.read(buffer)) > 0) {
+            while ((length = inputStream.read(buffer)) > 0) {
                 outputStream.write(buffer, 0, length);
                 totalBytes += length;
                 
@@ -509,22 +934,6 @@ public class DocumentProcessingService {
         return tempFile;
     }
     
-    /**
-     * Detect topic from text content
-     */
-    private String detectTopic(String text) {
-        // Simple topic detection - can be enhanced with NLP later
-        String[] lines = text.split("\n");
-        for (String line : lines) {
-            line = line.trim();
-            if (line.length() > 10 && line.length() < 100 && 
-                (line.endsWith(":") || Character.isUpperCase(line.charAt(0)))) {
-                return line.replace(":", "").trim();
-            }
-        }
-        return "General Content";
-    }
-    
     /**
      * Check if file type is supported
      */
@@ -559,6 +968,16 @@ public class DocumentProcessingService {
         return null;
     }
     
+    /**
+     * Store the document-level keyphrases
+     */
+    private void updateDocumentKeyphrases(Long id, String keyphrases) {
+        documentRepository.findById(id).ifPresent(document -> {
+            document.setKeyphrases(keyphrases);
+            documentRepository.save(document);
+        });
+    }
+    
     /**
      * Get file extension from filename
      */
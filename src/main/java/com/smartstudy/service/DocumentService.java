@@ -13,14 +13,18 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Service class for document management operations
@@ -28,6 +32,8 @@ import java.util.UUID;
 @Service
 public class DocumentService {
     
+    static final long MAX_FILE_SIZE = 100 * 1024 * 1024;
+    
     @Autowired
     private DocumentRepository documentRepository;
     
@@ -40,6 +46,9 @@ public class DocumentService {
     @Autowired
     private SearchService searchService;
     
+    @Autowired
+    private IngestionJobService ingestionJobService;
+    
     @Value("${file.upload.directory}")
     private String uploadDirectory;
     
@@ -50,6 +59,13 @@ public class DocumentService {
      * Upload a document file
      */
     public Document uploadDocument(MultipartFile file) throws IOException {
+        return uploadDocument(file, null);
+    }
+    
+    /**
+     * Upload a document file owned by a user (null for shared content)
+     */
+    public Document uploadDocument(MultipartFile file, Long ownerId) throws IOException {
         System.out.println("📤 DocumentService.uploadDocument called for: " + file.getOriginalFilename());
         
         // Validate file
@@ -63,41 +79,120 @@ public class DocumentService {
         }
         
         // Check file size (max 100MB)
-        if (file.getSize() > 100 * 1024 * 1024) {
+        if (file.getSize() > MAX_FILE_SIZE) {
             throw new IllegalArgumentException("File size too large. Maximum allowed: 100MB");
         }
         
-        // Create upload directory if it doesn't exist
+        // One read of the multipart temp file gives the hash, size and type
+        UploadScan scan;
+        try (InputStream inputStream = file.getInputStream()) {
+            scan = new UploadScan().scan(inputStream);
+        }
+        
+        // Move the multipart temp file into place rather than copying it
+        return registerUpload(originalFilename, scan, ownerId, target -> file.transferTo(target.toFile()));
+    }
+    
+    /**
+     * Turn a file that was already received and scanned in full (a completed chunked upload) into a document
+     *
+     * The file is moved into the upload directory (or deleted if identical content is already stored),
+     * so it must not be used by the caller afterwards. If registering it fails, the file is left (or
+     * put back) where it was, so the caller can try again.
+     */
+    Document uploadStoredFile(Path storedFile, String originalFilename, UploadScan scan, Long ownerId) throws IOException {
+        System.out.println("📤 DocumentService.uploadStoredFile called for: " + originalFilename);
+        AtomicReference<Path> movedTo = new AtomicReference<>();
+        Document document;
+        try {
+            document = registerUpload(originalFilename, scan, ownerId, target -> {
+                try {
+                    Files.move(storedFile, target, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    // Different file system: copy and delete
+                    Files.move(storedFile, target);
+                }
+                movedTo.set(target);
+            });
+        } catch (IOException | RuntimeException e) {
+            if (movedTo.get() != null) {
+                try {
+                    Files.move(movedTo.get(), storedFile);
+                } catch (IOException moveBackError) {
+                    e.addSuppressed(moveBackError);
+                }
+            }
+            throw e;
+        }
+        // Identical content was already stored, so this copy is not needed
+        Files.deleteIfExists(storedFile);
+        return document;
+    }
+    
+    /**
+     * Moves a received upload to its final place
+     */
+    @FunctionalInterface
+    private interface UploadStore {
+        void storeTo(Path target) throws IOException;
+    }
+    
+    private Path createUploadDirectory() throws IOException {
         Path uploadPath = Paths.get(uploadDirectory);
         if (!Files.exists(uploadPath)) {
             Files.createDirectories(uploadPath);
             System.out.println("📁 Created upload directory: " + uploadPath);
         }
-        
-        // Generate unique filename
+        return uploadPath;
+    }
+    
+    /**
+     * Validate a scanned upload, store it unless identical bytes are already stored, create its document and start processing it
+     */
+    private Document registerUpload(String originalFilename, UploadScan scan, Long ownerId, UploadStore store) throws IOException {
+        if (scan.size() == 0) {
+            throw new IllegalArgumentException("File is empty");
+        }
+        if (scan.size() > MAX_FILE_SIZE) {
+            throw new IllegalArgumentException("File size too large. Maximum allowed: 100MB");
+        }
         String fileExtension = getFileExtension(originalFilename);
-        String uniqueFilename = System.currentTimeMillis() + "_" + originalFilename;
-        
-        System.out.println("📝 Generated filename: " + uniqueFilename);
         System.out.println("📁 File extension: " + fileExtension);
+        scan.checkMatchesExtension(fileExtension);
+        String contentType = scan.contentType(originalFilename);
+        String fileHash = scan.sha256();
         
-        // Save file to disk
-        Path filePath = uploadPath.resolve(uniqueFilename);
-        try {
-            Files.copy(file.getInputStream(), filePath, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
-            System.out.println("💾 File saved to: " + filePath);
-        } catch (Exception e) {
-            System.err.println("❌ Failed to save file: " + e.getMessage());
-            throw new IOException("Failed to save uploaded file: " + e.getMessage(), e);
+        // Identical bytes are stored only once, so a duplicate is never written; processing will reuse the existing extraction
+        String uniqueFilename;
+        Path filePath;
+        Document identical = documentRepository.findFirstByFileHashOrderByIdAsc(fileHash).orElse(null);
+        if (identical != null && identical.getFilePath() != null && Files.exists(Paths.get(identical.getFilePath()))) {
+            uniqueFilename = identical.getFilename();
+            filePath = Paths.get(identical.getFilePath());
+            System.out.println("♻️ Identical to document " + identical.getId() + ", sharing stored file: " + filePath);
+        } else {
+            uniqueFilename = System.currentTimeMillis() + "_" + originalFilename;
+            System.out.println("📝 Generated filename: " + uniqueFilename);
+            filePath = createUploadDirectory().resolve(uniqueFilename).toAbsolutePath();
+            try {
+                store.storeTo(filePath);
+                System.out.println("💾 File saved to: " + filePath);
+            } catch (Exception e) {
+                System.err.println("❌ Failed to save file: " + e.getMessage());
+                throw new IOException("Failed to save uploaded file: " + e.getMessage(), e);
+            }
         }
         
         // Create document entity
         Document document = new Document();
         document.setFilename(uniqueFilename);
         document.setOriginalFilename(originalFilename);
-        document.setFileSize(file.getSize());
+        document.setFileSize(scan.size());
         document.setFileType(fileExtension);
         document.setFilePath(filePath.toString());
+        document.setFileHash(fileHash);
+        document.setContentType(contentType);
+        document.setOwnerId(ownerId);
         document.setStatus(DocumentStatus.PROCESSING); // Start with PROCESSING
         document.setUploadDate(LocalDateTime.now());
         
@@ -111,7 +206,79 @@ public class DocumentService {
             System.out.println("🔄 Started async processing for document: " + savedDocument.getId());
         } catch (Exception e) {
             System.err.println("⚠️ Warning: Failed to start async processing: " + e.getMessage());
-            // Don't fail the upload if processing fails
+            // Don't fail the upload if processing fails, but don't leave it stuck in PROCESSING either
+            savedDocument = updateDocumentStatus(savedDocument.getId(), DocumentStatus.FAILED);
+        }
+        
+        return savedDocument;
+    }
+    
+    /**
+     * Replace the file of an existing document and re-process only what changed
+     */
+    public Document updateDocumentFile(Long id, MultipartFile file) throws IOException {
+        Document document = documentRepository.findById(id).orElse(null);
+        if (document == null) {
+            throw new IllegalArgumentException("Document not found: " + id);
+        }
+        
+        // Validate file
+        if (file.isEmpty()) {
+            throw new IllegalArgumentException("File is empty");
+        }
+        
+        String originalFilename = file.getOriginalFilename();
+        if (originalFilename == null || originalFilename.trim().isEmpty()) {
+            throw new IllegalArgumentException("Invalid filename");
+        }
+        
+        String fileExtension = getFileExtension(originalFilename);
+        if (!fileExtension.equalsIgnoreCase(document.getFileType())) {
+            throw new IllegalArgumentException("Replacement file must have the same type (" + document.getFileType() + ")");
+        }
+        
+        UploadScan scan;
+        try (InputStream inputStream = file.getInputStream()) {
+            scan = new UploadScan().scan(inputStream);
+        }
+        if (scan.size() > MAX_FILE_SIZE) {
+            throw new IllegalArgumentException("File size too large. Maximum allowed: 100MB");
+        }
+        scan.checkMatchesExtension(fileExtension);
+        
+        // Move the new version next to the old one, then drop the old file
+        Path uploadPath = createUploadDirectory();
+        String uniqueFilename = System.currentTimeMillis() + "_" + originalFilename;
+        Path filePath = uploadPath.resolve(uniqueFilename).toAbsolutePath();
+        try {
+            file.transferTo(filePath.toFile());
+            System.out.println("💾 Updated file saved to: " + filePath);
+        } catch (Exception e) {
+            System.err.println("❌ Failed to save file: " + e.getMessage());
+            throw new IOException("Failed to save uploaded file: " + e.getMessage(), e);
+        }
+        
+        try {
+            deleteFileIfUnshared(document.getFilePath());
+        } catch (IOException e) {
+            System.err.println("⚠️ Could not delete previous file version: " + e.getMessage());
+        }
+        
+        document.setFilename(uniqueFilename);
+        document.setOriginalFilename(originalFilename);
+        document.setFileSize(scan.size());
+        document.setFilePath(filePath.toString());
+        document.setFileHash(scan.sha256());
+        document.setContentType(scan.contentType(originalFilename));
+        document.setStatus(DocumentStatus.PROCESSING);
+        Document savedDocument = documentRepository.save(document);
+        
+        try {
+            documentProcessingService.reprocessDocumentAsync(savedDocument);
+            System.out.println("🔄 Started incremental re-processing for document: " + savedDocument.getId());
+        } catch (Exception e) {
+            System.err.println("⚠️ Warning: Failed to start async re-processing: " + e.getMessage());
+            savedDocument = updateDocumentStatus(savedDocument.getId(), DocumentStatus.FAILED);
         }
         
         return savedDocument;
@@ -155,11 +322,12 @@ public class DocumentService {
             // Delete file from disk
             try {
                 Path filePath = Paths.get(document.getFilePath());
-                if (Files.exists(filePath)) {
-                    Files.deleteIfExists(filePath);
+                if (!Files.exists(filePath)) {
+                    System.out.println("⚠️ File not found on disk: " + filePath);
+                } else if (deleteFileIfUnshared(document.getFilePath())) {
                     System.out.println("✅ Deleted file from disk: " + filePath);
                 } else {
-                    System.out.println("⚠️ File not found on disk: " + filePath);
+                    System.out.println("♻️ Keeping file still used by identical documents: " + filePath);
                 }
             } catch (IOException e) {
                 // Log error but continue with database deletion
@@ -174,6 +342,9 @@ public class DocumentService {
                 System.err.println("⚠️ Warning: Failed to remove from search index: " + e.getMessage());
             }
             
+            // Drop any pending ingestion job
+            ingestionJobService.deleteForDocument(id);
+            
             // Delete content first (to avoid foreign key constraint)
             try {
                 documentContentRepository.deleteByDocument_Id(id);
@@ -220,6 +391,8 @@ public class DocumentService {
                     System.err.println("⚠️ Could not remove from search index: " + document.getId());
                 }
                 
+                ingestionJobService.deleteForDocument(document.getId());
+                
                 deletedCount++;
             } catch (Exception e) {
                 System.err.println("❌ Error deleting document " + document.getId() + ": " + e.getMessage());
@@ -252,10 +425,12 @@ public class DocumentService {
         // Documents by status
         long processingCount = documentRepository.countByStatus(DocumentStatus.PROCESSING);
         long completedCount = documentRepository.countByStatus(DocumentStatus.COMPLETED);
+        long partialCount = documentRepository.countByStatus(DocumentStatus.PARTIAL);
         long failedCount = documentRepository.countByStatus(DocumentStatus.FAILED);
         
         stats.put("processingCount", processingCount);
         stats.put("completedCount", completedCount);
+        stats.put("partialCount", partialCount);
         stats.put("failedCount", failedCount);
         
         // Total file size
@@ -282,6 +457,18 @@ public class DocumentService {
         return null;
     }
     
+    /**
+     * Delete a stored file unless another document still references it
+     *
+     * @return true if the file was deleted
+     */
+    private boolean deleteFileIfUnshared(String filePath) throws IOException {
+        if (filePath == null || documentRepository.countByFilePath(filePath) > 1) {
+            return false;
+        }
+        return Files.deleteIfExists(Paths.get(filePath));
+    }
+    
     /**
      * Get file extension from filename
      */
@@ -0,0 +1,435 @@
+package com.smartstudy.service;
+
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.openxml4j.opc.PackageRelationshipCollection;
+import org.apache.poi.openxml4j.opc.PackageRelationshipTypes;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xwpf.usermodel.XWPFRelation;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Streaming DOCX reader that SAX-parses word/document.xml straight out of the package
+ *
+ * Splits the text into sections at heading paragraphs (heading styles or an outline level)
+ * and hands on blocks of bounded size, so memory use stays constant however long the
+ * document is. Table rows are written as their cells joined with " | ".
+ */
+public class DocxStreamingReader {
+
+    /**
+     * Receives each block of text and the title of the section it belongs to
+     */
+    @FunctionalInterface
+    public interface BlockListener {
+        void onBlock(String sectionTitle, String text);
+    }
+
+    private static final String WORDML_NS = "http://schemas.openxmlformats.org/wordprocessingml/2006/main";
+    private static final String STRICT_WORDML_NS = "http://purl.oclc.org/ooxml/wordprocessingml/main";
+    private static final String MARKUP_COMPATIBILITY_NS = "http://schemas.openxmlformats.org/markup-compatibility/2006";
+
+    private static final int MAX_TITLE_CHARS = 200;
+    private static final int BODY_OUTLINE_LEVEL = 9;
+
+    private final int blockChars;
+    private final BlockListener listener;
+
+    private int paragraphCount;
+    private int headingCount;
+    private int tableCount;
+    private int blockCount;
+
+    public DocxStreamingReader(int blockChars, BlockListener listener) {
+        this.blockChars = Math.max(1, blockChars);
+        this.listener = listener;
+    }
+
+    /**
+     * Read a .docx file, handing on blocks as the main document part is parsed
+     */
+    public void read(Path file) throws IOException, SAXException, InvalidFormatException {
+        // Opening from a file reads parts lazily from the ZIP instead of buffering the whole package
+        OPCPackage pkg = OPCPackage.open(file.toFile(), PackageAccess.READ);
+        try {
+            PackagePart mainPart = mainDocumentPart(pkg);
+            Map<String, StyleInfo> styles = new HashMap<>();
+            PackageRelationshipCollection styleRelations = mainPart.getRelationshipsByType(XWPFRelation.STYLES.getRelation());
+            if (styleRelations.size() > 0) {
+                PackagePart stylesPart = mainPart.getRelatedPart(styleRelations.getRelationship(0));
+                parse(stylesPart, new StylesHandler(styles));
+            }
+            parse(mainPart, new BodyHandler(styles));
+        } finally {
+            // Read-only packages are closed with revert(); close() would try to save
+            pkg.revert();
+        }
+    }
+
+    public int getParagraphCount() { return paragraphCount; }
+
+    public int getHeadingCount() { return headingCount; }
+
+    public int getTableCount() { return tableCount; }
+
+    public int getBlockCount() { return blockCount; }
+
+    private PackagePart mainDocumentPart(OPCPackage pkg) throws InvalidFormatException {
+        PackageRelationshipCollection relations = pkg.getRelationshipsByType(PackageRelationshipTypes.CORE_DOCUMENT);
+        if (relations.size() == 0) {
+            relations = pkg.getRelationshipsByType(PackageRelationshipTypes.STRICT_CORE_DOCUMENT);
+        }
+        if (relations.size() == 0) {
+            throw new InvalidFormatException("No main document part found");
+        }
+        return pkg.getPart(relations.getRelationship(0));
+    }
+
+    private void parse(PackagePart part, DefaultHandler handler) throws IOException, SAXException {
+        XMLReader reader;
+        try {
+            reader = XMLHelper.newXMLReader();
+        } catch (ParserConfigurationException e) {
+            throw new SAXException("Could not create XML reader", e);
+        }
+        reader.setContentHandler(handler);
+        try (InputStream stream = part.getInputStream()) {
+            reader.parse(new InputSource(stream));
+        }
+    }
+
+    private static boolean isWordml(String uri) {
+        return WORDML_NS.equals(uri) || STRICT_WORDML_NS.equals(uri);
+    }
+
+    private static String wordmlAttribute(Attributes attributes, String localName) {
+        String value = attributes.getValue(WORDML_NS, localName);
+        return value != null ? value : attributes.getValue(STRICT_WORDML_NS, localName);
+    }
+
+    /**
+     * Outline level of a paragraph style, following basedOn, or null for body text
+     */
+    private static Integer headingLevel(Map<String, StyleInfo> styles, String styleId) {
+        String id = styleId;
+        // basedOn chains are short; the bound guards against cycles in malformed files
+        for (int depth = 0; id != null && depth < 10; depth++) {
+            StyleInfo style = styles.get(id);
+            if (style == null) {
+                break;
+            }
+            if (style.outlineLevel != null) {
+                return style.outlineLevel < BODY_OUTLINE_LEVEL ? style.outlineLevel : null;
+            }
+            id = style.basedOn;
+        }
+        // Documents written without a styles part still use the built-in IDs
+        if (styleId != null && styleId.toLowerCase(Locale.ROOT).matches("heading\\s*\\d")) {
+            return Character.getNumericValue(styleId.charAt(styleId.length() - 1)) - 1;
+        }
+        return null;
+    }
+
+    private static class StyleInfo {
+        private String basedOn;
+        private Integer outlineLevel;
+    }
+
+    /**
+     * Collects the outline level of every paragraph style in word/styles.xml
+     */
+    private static class StylesHandler extends DefaultHandler {
+        private final Map<String, StyleInfo> styles;
+        private StyleInfo current;
+
+        private StylesHandler(Map<String, StyleInfo> styles) {
+            this.styles = styles;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            if (!isWordml(uri)) {
+                return;
+            }
+            switch (localName) {
+                case "style":
+                    if ("paragraph".equals(wordmlAttribute(attributes, "type"))) {
+                        current = new StyleInfo();
+                        styles.put(wordmlAttribute(attributes, "styleId"), current);
+                    }
+                    break;
+                case "name":
+                    if (current != null && current.outlineLevel == null) {
+                        String name = String.valueOf(wordmlAttribute(attributes, "val")).toLowerCase(Locale.ROOT);
+                        if (name.matches("heading [1-9]")) {
+                            current.outlineLevel = name.charAt(name.length() - 1) - '1';
+                        } else if (name.equals("title")) {
+                            current.outlineLevel = 0;
+                        }
+                    }
+                    break;
+                case "basedOn":
+                    if (current != null) {
+                        current.basedOn = wordmlAttribute(attributes, "val");
+                    }
+                    break;
+                case "outlineLvl":
+                    if (current != null) {
+                        current.outlineLevel = parseLevel(wordmlAttribute(attributes, "val"));
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            if (isWordml(uri) && "style".equals(localName)) {
+                current = null;
+            }
+        }
+    }
+
+    private static Integer parseLevel(String value) {
+        try {
+            return value != null ? Integer.valueOf(value) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Walks word/document.xml, building paragraphs and table rows and cutting them into section blocks
+     */
+    private class BodyHandler extends DefaultHandler {
+        private final Map<String, StyleInfo> styles;
+
+        private final StringBuilder section = new StringBuilder();
+        private final StringBuilder paragraph = new StringBuilder();
+        private final StringBuilder cell = new StringBuilder();
+        private final List<String> rowCells = new ArrayList<>();
+
+        private String sectionTitle;
+        private int sectionNumber;
+        private int sectionPart;
+        private boolean sectionHasBody;
+
+        private int paragraphDepth;
+        private int tableDepth;
+        private int skipDepth;
+        private boolean inText;
+        private String paragraphStyle;
+        private Integer paragraphOutlineLevel;
+
+        private BodyHandler(Map<String, StyleInfo> styles) {
+            this.styles = styles;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            // Alternate content repeats text boxes as a fallback for old readers; read the first choice only
+            if (skipDepth > 0 || (MARKUP_COMPATIBILITY_NS.equals(uri) && "Fallback".equals(localName))) {
+                skipDepth++;
+                return;
+            }
+            if (!isWordml(uri)) {
+                return;
+            }
+            switch (localName) {
+                case "p":
+                    if (paragraphDepth++ == 0) {
+                        paragraph.setLength(0);
+                        paragraphStyle = null;
+                        paragraphOutlineLevel = null;
+                    }
+                    break;
+                case "pStyle":
+                    if (paragraphDepth == 1) {
+                        paragraphStyle = wordmlAttribute(attributes, "val");
+                    }
+                    break;
+                case "outlineLvl":
+                    if (paragraphDepth == 1) {
+                        paragraphOutlineLevel = parseLevel(wordmlAttribute(attributes, "val"));
+                    }
+                    break;
+                case "t":
+                    inText = true;
+                    break;
+                case "tab":
+                    if (paragraphDepth > 0) {
+                        paragraph.append('\t');
+                    }
+                    break;
+                case "br":
+                case "cr":
+                    if (paragraphDepth > 0) {
+                        paragraph.append('\n');
+                    }
+                    break;
+                case "tbl":
+                    if (tableDepth++ == 0) {
+                        tableCount++;
+                    }
+                    break;
+                case "tc":
+                    if (tableDepth == 1) {
+                        cell.setLength(0);
+                    }
+                    break;
+                case "tr":
+                    if (tableDepth == 1) {
+                        rowCells.clear();
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inText && skipDepth == 0 && paragraphDepth > 0) {
+                paragraph.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            if (skipDepth > 0) {
+                skipDepth--;
+                return;
+            }
+            if (!isWordml(uri)) {
+                return;
+            }
+            switch (localName) {
+                case "t":
+                    inText = false;
+                    break;
+                case "p":
+                    if (--paragraphDepth == 0) {
+                        endParagraph();
+                    } else {
+                        // Paragraphs nested in text boxes run on inside their anchoring paragraph
+                        paragraph.append(' ');
+                    }
+                    break;
+                case "tc":
+                    if (tableDepth == 1) {
+                        String cellText = cell.toString().trim();
+                        if (!cellText.isEmpty()) {
+                            rowCells.add(cellText);
+                        }
+                    }
+                    break;
+                case "tr":
+                    if (tableDepth == 1 && !rowCells.isEmpty()) {
+                        appendBody(String.join(" | ", rowCells));
+                        rowCells.clear();
+                    }
+                    break;
+                case "tbl":
+                    tableDepth--;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void endDocument() {
+            flushSection();
+        }
+
+        private void endParagraph() {
+            String text = paragraph.toString().trim();
+            paragraph.setLength(0);
+            if (text.isEmpty()) {
+                return;
+            }
+            paragraphCount++;
+            if (tableDepth > 0) {
+                // Nested tables and multi-paragraph cells all end up in the outer cell
+                if (cell.length() > 0) {
+                    cell.append(' ');
+                }
+                cell.append(text);
+                return;
+            }
+
+            Integer level = paragraphOutlineLevel != null ? paragraphOutlineLevel : headingLevel(styles, paragraphStyle);
+            if (level != null && level < BODY_OUTLINE_LEVEL) {
+                flushSection();
+                headingCount++;
+                sectionTitle = text.length() > MAX_TITLE_CHARS ? text.substring(0, MAX_TITLE_CHARS) : text;
+                section.append(text).append('\n');
+                return;
+            }
+            appendBody(text);
+        }
+
+        private void appendBody(String text) {
+            section.append(text).append('\n');
+            sectionHasBody = true;
+            while (section.length() >= blockChars) {
+                emit(cutPoint());
+            }
+        }
+
+        /**
+         * Cut at the last paragraph break in the block, or the last space if a single paragraph overflows it
+         */
+        private int cutPoint() {
+            int newline = section.lastIndexOf("\n", blockChars - 1);
+            if (newline >= blockChars / 2) {
+                return newline + 1;
+            }
+            int space = section.lastIndexOf(" ", blockChars - 1);
+            return space > 0 ? space + 1 : blockChars;
+        }
+
+        private void flushSection() {
+            // Headings without body text (a chapter heading straight before its first subsection)
+            // carry over into the next section
+            if (sectionHasBody) {
+                emit(section.length());
+                section.setLength(0);
+            }
+            sectionTitle = null;
+            sectionPart = 0;
+            sectionHasBody = false;
+        }
+
+        private void emit(int end) {
+            String text = section.substring(0, end).trim();
+            section.delete(0, end);
+            if (text.isEmpty()) {
+                return;
+            }
+            if (sectionPart++ == 0) {
+                sectionNumber++;
+            }
+            String title = sectionTitle != null ? sectionTitle : "Section " + sectionNumber;
+            blockCount++;
+            listener.onBlock(sectionPart == 1 ? title : title + " (part " + sectionPart + ")", text);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.smartstudy.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hard time limit for extraction work running on one thread (a whole document, or one ZIP entry or PDF page range)
+ *
+ * When the limit passes, a watchdog closes the resources registered with the timeout (parsers rarely
+ * check for interrupts, but fail fast once their input is closed) and, if the thread is parked
+ * waiting on other workers ({@link #interruptibleWait()}), interrupts it. The thread is never
+ * interrupted anywhere else: it may be saving or indexing blocks inline, and an interrupt during
+ * NIO would close the IndexWriter. Extractors call {@link #checkCurrent()} between blocks, so
+ * extraction stops at the next block boundary either way. A timeout started inside another never
+ * outlives it. Closing the timeout cancels the watchdog and clears any interrupt it raised, so
+ * pooled threads are handed back clean.
+ */
+class ExtractionTimeout implements AutoCloseable {
+
+    private static final ThreadLocal<ExtractionTimeout> CURRENT = new ThreadLocal<>();
+
+    // Threads parked in an interruptible wait; the lock keeps an interrupt from landing after one has left it
+    private static final Set<Thread> WAITING = ConcurrentHashMap.newKeySet();
+    private static final ReentrantLock WAIT_LOCK = new ReentrantLock();
+
+    private final String what;
+    private final long timeoutMs;
+    private final long deadline;
+    private final ExtractionTimeout outer;
+    private final Thread thread;
+    private final List<Closeable> resources = new CopyOnWriteArrayList<>();
+    // Guards expiry against close, so the watchdog never interrupts a thread that has moved on
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile boolean expired;
+    private boolean closed;
+    private ScheduledFuture<?> watchdog;
+
+    private ExtractionTimeout(String what, long timeoutMs, long deadline, ExtractionTimeout outer) {
+        this.what = what;
+        this.timeoutMs = timeoutMs;
+        this.outer = outer;
+        this.thread = Thread.currentThread();
+        this.deadline = outer != null ? Math.min(deadline, outer.deadline) : deadline;
+    }
+
+    /**
+     * Start a timeout for work on the current thread, within the timeout already running on it (if any)
+     */
+    static ExtractionTimeout start(ScheduledExecutorService scheduler, String what, long timeoutMs) {
+        return start(scheduler, what, timeoutMs, CURRENT.get());
+    }
+
+    /**
+     * Start a timeout for work on the current thread, within a timeout running on another thread (or null)
+     */
+    static ExtractionTimeout start(ScheduledExecutorService scheduler, String what, long timeoutMs, ExtractionTimeout outer) {
+        ExtractionTimeout timeout = new ExtractionTimeout(what, timeoutMs,
+                System.currentTimeMillis() + Math.max(0, timeoutMs), outer);
+        return timeout.arm(scheduler);
+    }
+
+    /**
+     * Continue a timeout running on another thread on the current one, e.g. for a part of the work
+     * handed to a pool; without one (null) the work has no limit
+     */
+    static ExtractionTimeout within(ScheduledExecutorService scheduler, String what, ExtractionTimeout outer) {
+        if (outer == null) {
+            ExtractionTimeout unlimited = new ExtractionTimeout(what, 0, Long.MAX_VALUE, null);
+            CURRENT.set(unlimited);
+            return unlimited;
+        }
+        return new ExtractionTimeout(what, outer.timeoutMs, outer.deadline, outer).arm(scheduler);
+    }
+
+    private ExtractionTimeout arm(ScheduledExecutorService scheduler) {
+        CURRENT.set(this);
+        watchdog = scheduler.schedule(this::expire, Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    /**
+     * Timeout of the work running on the current thread, or null
+     */
+    static ExtractionTimeout current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Throw if the current thread's timeout (or one it runs within) has passed
+     */
+    static void checkCurrent() {
+        ExtractionTimeout timeout = CURRENT.get();
+        if (timeout != null) {
+            timeout.check();
+        }
+    }
+
+    /**
+     * Close a resource (a parsed document or its input) if the current thread's timeout passes while
+     * it is open; closing the returned registration (before the resource) stops that again
+     */
+    static Registration closeOnTimeout(Closeable resource) {
+        ExtractionTimeout timeout = CURRENT.get();
+        if (timeout == null) {
+            return () -> { };
+        }
+        timeout.resources.add(resource);
+        if (timeout.expired) {
+            closeQuietly(resource);
+        }
+        return () -> timeout.resources.remove(resource);
+    }
+
+    /**
+     * Let the current thread's timeout interrupt it while it waits on other workers (a future or a
+     * semaphore); closing the returned registration ends that again, once the wait is over
+     */
+    static Registration interruptibleWait() {
+        Thread thread = Thread.currentThread();
+        ExtractionTimeout timeout = CURRENT.get();
+        WAIT_LOCK.lock();
+        try {
+            WAITING.add(thread);
+            if (timeout != null && timeout.isExpired()) {
+                // Passed before the wait began: don't wait at all
+                thread.interrupt();
+            }
+        } finally {
+            WAIT_LOCK.unlock();
+        }
+        return () -> {
+            WAIT_LOCK.lock();
+            try {
+                WAITING.remove(thread);
+                if (timeout != null && timeout.isExpired()) {
+                    // The timeout is reported by check(), so its interrupt must not reach the code after the wait
+                    Thread.interrupted();
+                }
+            } finally {
+                WAIT_LOCK.unlock();
+            }
+        };
+    }
+
+    /**
+     * Whether this timeout, or one it runs within, has passed
+     */
+    boolean isExpired() {
+        return expired || (outer != null && outer.isExpired());
+    }
+
+    void check() {
+        for (ExtractionTimeout timeout = this; timeout != null; timeout = timeout.outer) {
+            if (timeout.expired) {
+                throw new ExtractionTimeoutException(timeout.what + " exceeded its time limit of "
+                        + TimeUnit.MILLISECONDS.toSeconds(timeout.timeoutMs) + "s");
+            }
+        }
+    }
+
+    private void expire() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            expired = true;
+            // When the enclosing limit is the one that passed, the enclosing timeout reports it
+            if (outer == null || deadline < outer.deadline) {
+                System.err.println("⏰ " + what + " exceeded its time limit of " + TimeUnit.MILLISECONDS.toSeconds(timeoutMs)
+                        + "s; stopping it");
+            }
+            for (Closeable resource : resources) {
+                closeQuietly(resource);
+            }
+            interruptIfWaiting(thread);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            if (watchdog != null) {
+                watchdog.cancel(false);
+            }
+            if (expired && thread == Thread.currentThread()) {
+                // Clear the interrupt raised by expire(), if nothing consumed it yet
+                Thread.interrupted();
+            }
+        } finally {
+            lock.unlock();
+        }
+        resources.clear();
+        if (CURRENT.get() == this) {
+            if (outer != null && outer.thread == thread) {
+                CURRENT.set(outer);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    private static void interruptIfWaiting(Thread thread) {
+        WAIT_LOCK.lock();
+        try {
+            if (WAITING.contains(thread)) {
+                thread.interrupt();
+            }
+        } finally {
+            WAIT_LOCK.unlock();
+        }
+    }
+
+    private static void closeQuietly(Closeable resource) {
+        try {
+            resource.close();
+        } catch (IOException | RuntimeException ignored) {
+            // the parsing thread sees the failure
+        }
+    }
+
+    /**
+     * Registration of a resource to close on timeout
+     */
+    interface Registration extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * Extraction was stopped because its time limit passed
+     */
+    static class ExtractionTimeoutException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ExtractionTimeoutException(String message) {
+            super(message);
+        }
+    }
+}
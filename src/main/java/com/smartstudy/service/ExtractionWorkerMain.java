@@ -0,0 +1,149 @@
+package com.smartstudy.service;
+
+import com.smartstudy.model.Document;
+import com.smartstudy.model.DocumentContent;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Entry point of an isolated extraction worker process, and the protocol it speaks with {@link ExtractionWorkerPool}
+ *
+ * The worker runs the same {@link ContentExtractor} as in-process ingestion, without a Spring
+ * context, a database or the index. Requests (file path, name, first page) arrive on stdin; blocks
+ * are streamed back on stdout as they are extracted, followed by a done or error frame. Log output
+ * goes to stderr. Settings are the ingestion properties of the parent, passed as system properties.
+ */
+public final class ExtractionWorkerMain {
+
+    static final byte BLOCK = 'B';
+    static final byte DONE = 'D';
+    static final byte ERROR = 'E';
+
+    private ExtractionWorkerMain() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        // stdout carries the protocol; everything printed goes to stderr
+        PrintStream protocolOut = System.out;
+        System.setOut(System.err);
+
+        // System properties and environment variables, resolved as in the application
+        Environment settings = new StandardEnvironment();
+        ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "extraction-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ContentExtractor extractor = new ContentExtractor(settings, new PdfMemoryBudget(settings), watchdog);
+        warmUp(extractor);
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(protocolOut));
+        while (true) {
+            String path;
+            try {
+                path = in.readUTF();
+            } catch (EOFException e) {
+                // The pool closed our stdin: retired or shutting down
+                break;
+            }
+            String filename = in.readUTF();
+            int firstPage = in.readInt();
+            try {
+                extractor.extract(Paths.get(path), filename, new Document(), content -> {
+                    try {
+                        writeBlock(out, content);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, firstPage);
+                out.writeByte(DONE);
+            } catch (UncheckedIOException e) {
+                // The pool is gone
+                break;
+            } catch (Exception e) {
+                out.writeByte(ERROR);
+                writeString(out, e.getMessage() != null ? e.getMessage() : e.getClass().getName());
+            }
+            out.flush();
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Load the parsers while the worker is still idle, so its first file is not slowed down by class loading
+     */
+    private static void warmUp(ContentExtractor extractor) {
+        try {
+            Path sample = Files.createTempFile("extraction-warmup-", ".txt");
+            try {
+                Files.writeString(sample, "warm up");
+                extractor.extract(sample, sample.getFileName().toString(), new Document(), content -> { }, 1);
+            } finally {
+                Files.deleteIfExists(sample);
+            }
+        } catch (Exception e) {
+            System.err.println("⚠️ Extraction worker warm-up failed: " + e.getMessage());
+        }
+    }
+
+    static void writeBlock(DataOutputStream out, DocumentContent content) throws IOException {
+        out.writeByte(BLOCK);
+        out.writeInt(content.getPageNumber() != null ? content.getPageNumber() : -1);
+        out.writeInt(content.getSlideNumber() != null ? content.getSlideNumber() : -1);
+        writeString(out, content.getSectionTitle());
+        writeString(out, content.getTopic());
+        writeString(out, content.getContent());
+        out.flush();
+    }
+
+    static DocumentContent readBlock(DataInputStream in) throws IOException {
+        DocumentContent content = new DocumentContent();
+        int page = in.readInt();
+        int slide = in.readInt();
+        content.setPageNumber(page >= 0 ? page : null);
+        content.setSlideNumber(slide >= 0 ? slide : null);
+        content.setSectionTitle(readString(in));
+        content.setTopic(readString(in));
+        content.setContent(readString(in));
+        return content;
+    }
+
+    /**
+     * Length-prefixed UTF-8 (writeUTF is limited to 64 KB), with -1 for null
+     */
+    static void writeString(DataOutputStream out, String text) throws IOException {
+        if (text == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
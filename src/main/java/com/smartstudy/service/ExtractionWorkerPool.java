@@ -0,0 +1,382 @@
+package com.smartstudy.service;
+
+import com.smartstudy.model.Document;
+import com.smartstudy.model.DocumentContent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.EnumerablePropertySource;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.PropertySource;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.jar.JarFile;
+
+/**
+ * Pool of child JVMs that parse files on behalf of ingestion, so a parser that runs out of memory,
+ * crashes or hangs takes down one worker process instead of the application
+ *
+ * Each worker has its own heap limit and exits on OutOfMemoryError. Workers are started up front,
+ * reused for up to max-jobs-per-worker files and then replaced, and killed when the extraction's
+ * time limit passes. Blocks stream back as they are extracted, so the rest of ingestion (header
+ * stripping, chunking, the persist pipeline) runs in the application exactly as for in-process
+ * extraction.
+ */
+@Component
+public class ExtractionWorkerPool {
+
+    // Spring Boot 3.2's launcher, for running a main class other than the application's from the fat jar
+    private static final String BOOT_LAUNCHER = "org.springframework.boot.loader.launch.PropertiesLauncher";
+
+    @Autowired
+    private Environment environment;
+
+    @Value("${ingestion.isolation.enabled:false}")
+    private boolean enabled;
+
+    @Value("${ingestion.isolation.workers:2}")
+    private int workerCount;
+
+    @Value("${ingestion.isolation.heap-mb:512}")
+    private int heapMb;
+
+    @Value("${ingestion.isolation.max-jobs-per-worker:50}")
+    private int maxJobsPerWorker;
+
+    @Value("${ingestion.isolation.jvm-options:}")
+    private String jvmOptions;
+
+    private final LinkedBlockingQueue<Worker> idleWorkers = new LinkedBlockingQueue<>();
+    private Semaphore workerSlots;
+    private volatile boolean closed;
+
+    private final AtomicInteger workerNumber = new AtomicInteger();
+    private final AtomicInteger liveWorkers = new AtomicInteger();
+    private final AtomicLong startedWorkers = new AtomicLong();
+    private final AtomicLong recycledWorkers = new AtomicLong();
+    private final AtomicLong crashedWorkers = new AtomicLong();
+    private final AtomicLong completedJobs = new AtomicLong();
+    private final AtomicLong failedJobs = new AtomicLong();
+    private final AtomicLong totalJobMs = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        workerSlots = new Semaphore(Math.max(1, workerCount), true);
+        if (!enabled) {
+            return;
+        }
+        // Start the JVMs now, so the first files don't wait for them to boot
+        for (int i = 0; i < Math.max(1, workerCount); i++) {
+            startReplacement();
+        }
+        System.out.println("🧱 Extraction isolated in " + Math.max(1, workerCount) + " worker processes ("
+                + heapMb + " MB heap each, replaced after " + maxJobsPerWorker + " files)");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        closed = true;
+        Worker worker;
+        while ((worker = idleWorkers.poll()) != null) {
+            worker.retire();
+        }
+    }
+
+    /**
+     * Whether extraction runs in worker processes
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Extract a file in a worker process, handing blocks to the sink as they arrive
+     *
+     * @throws IOException when extraction fails or the worker dies (out of memory, crash, or killed at the time limit)
+     */
+    @SuppressWarnings("try") // registrations only need closing
+    public void extract(Path file, String filename, int firstPage, Document document, Consumer<DocumentContent> sink) throws IOException {
+        try (ExtractionTimeout.Registration interruptible = ExtractionTimeout.interruptibleWait()) {
+            workerSlots.acquire();
+        } catch (InterruptedException e) {
+            // Interrupted because the time limit passed: report that, without passing the interrupt on
+            ExtractionTimeout.checkCurrent();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for an extraction worker", e);
+        }
+        long startTime = System.currentTimeMillis();
+        Worker worker = null;
+        boolean reusable = false;
+        try {
+            worker = idleWorkers.poll();
+            if (worker == null || !worker.process.isAlive()) {
+                if (worker != null) {
+                    worker.destroy();
+                }
+                worker = startWorker();
+            }
+            try (ExtractionTimeout.Registration killOnTimeout = ExtractionTimeout.closeOnTimeout(worker)) {
+                reusable = worker.run(file, filename, firstPage, document, sink);
+            } catch (ExtractionFailedException | ContentExtractor.ExtractionTruncatedException e) {
+                // The worker reported the failure itself and read the file to the end, so it can take the next one
+                reusable = !worker.killed;
+                throw e;
+            }
+            completedJobs.incrementAndGet();
+        } catch (IOException | RuntimeException e) {
+            failedJobs.incrementAndGet();
+            if (worker != null && !worker.process.isAlive() && !worker.killed) {
+                crashedWorkers.incrementAndGet();
+                int exitCode = worker.exitCode();
+                // ExitOnOutOfMemoryError exits with code 3
+                throw new IOException("Extraction worker for " + filename + " died (exit code " + exitCode
+                        + (exitCode == 3 ? ", out of memory" : "") + ")", e);
+            }
+            if (worker != null && worker.killed) {
+                // Killed at the time limit: report the timeout rather than the broken pipe
+                ExtractionTimeout.checkCurrent();
+            }
+            throw e;
+        } finally {
+            totalJobMs.addAndGet(System.currentTimeMillis() - startTime);
+            if (worker != null) {
+                if (closed) {
+                    worker.destroy();
+                } else if (!reusable) {
+                    worker.destroy();
+                    startReplacement();
+                } else if (worker.jobs >= maxJobsPerWorker) {
+                    recycledWorkers.incrementAndGet();
+                    worker.retire();
+                    startReplacement();
+                } else {
+                    idleWorkers.add(worker);
+                }
+            }
+            workerSlots.release();
+        }
+    }
+
+    /**
+     * Get worker process and job statistics
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long jobs = completedJobs.get() + failedJobs.get();
+        stats.put("enabled", enabled);
+        stats.put("workers", workerCount);
+        stats.put("heapMb", heapMb);
+        stats.put("liveWorkers", liveWorkers.get());
+        stats.put("idleWorkers", idleWorkers.size());
+        stats.put("startedWorkers", startedWorkers.get());
+        stats.put("recycledWorkers", recycledWorkers.get());
+        stats.put("crashedWorkers", crashedWorkers.get());
+        stats.put("completedJobs", completedJobs.get());
+        stats.put("failedJobs", failedJobs.get());
+        stats.put("averageJobMs", jobs > 0 ? totalJobMs.get() / jobs : 0);
+        return stats;
+    }
+
+    /**
+     * Start an idle worker ahead of need, so the next file doesn't wait for a JVM to boot
+     */
+    private void startReplacement() {
+        try {
+            idleWorkers.add(startWorker());
+        } catch (IOException e) {
+            // The next extraction starts one itself
+            System.err.println("⚠️ Could not start extraction worker: " + e.getMessage());
+        }
+    }
+
+    private Worker startWorker() throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-Xmx" + heapMb + "m");
+        command.add("-XX:+ExitOnOutOfMemoryError");
+        if (jvmOptions != null && !jvmOptions.isBlank()) {
+            command.addAll(List.of(jvmOptions.trim().split("\\s+")));
+        }
+        // The worker reads the same extraction settings as this application
+        for (String key : settingKeys()) {
+            String value = environment.getProperty(key);
+            if (value != null) {
+                command.add("-D" + key + "=" + value);
+            }
+        }
+        String classPath = System.getProperty("java.class.path");
+        command.add("-cp");
+        command.add(classPath);
+        if (isBootJar(classPath)) {
+            command.add("-Dloader.main=" + ExtractionWorkerMain.class.getName());
+            command.add(BOOT_LAUNCHER);
+        } else {
+            command.add(ExtractionWorkerMain.class.getName());
+        }
+
+        Process process = new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        startedWorkers.incrementAndGet();
+        liveWorkers.incrementAndGet();
+        return new Worker(process, workerNumber.incrementAndGet());
+    }
+
+    /**
+     * Names of the ingestion settings configured in this application (environment variables reach the worker anyway)
+     */
+    private Set<String> settingKeys() {
+        Set<String> keys = new TreeSet<>();
+        if (environment instanceof ConfigurableEnvironment configurable) {
+            for (PropertySource<?> source : configurable.getPropertySources()) {
+                if (source instanceof EnumerablePropertySource<?> enumerable) {
+                    for (String name : enumerable.getPropertyNames()) {
+                        if (name.startsWith("ingestion.") || name.equals("file.temp.directory")) {
+                            keys.add(name);
+                        }
+                    }
+                }
+            }
+        }
+        return keys;
+    }
+
+    private boolean isBootJar(String classPath) {
+        if (classPath.contains(File.pathSeparator) || !classPath.endsWith(".jar")) {
+            return false;
+        }
+        try (JarFile jar = new JarFile(classPath)) {
+            return jar.getEntry("BOOT-INF/classes/") != null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * One worker process; used by one extraction at a time
+     */
+    private class Worker implements Closeable {
+        private final Process process;
+        private final int number;
+        private final DataOutputStream requests;
+        private final DataInputStream responses;
+        private int jobs;
+        private volatile boolean killed;
+        private boolean gone;
+
+        private Worker(Process process, int number) {
+            this.process = process;
+            this.number = number;
+            this.requests = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            this.responses = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+        }
+
+        /**
+         * Run one extraction
+         *
+         * @return whether the worker is in a clean state to take another file
+         */
+        private boolean run(Path file, String filename, int firstPage, Document document, Consumer<DocumentContent> sink) throws IOException {
+            jobs++;
+            requests.writeUTF(file.toAbsolutePath().toString());
+            requests.writeUTF(filename);
+            requests.writeInt(firstPage);
+            requests.flush();
+            int blocks = 0;
+            while (true) {
+                byte frame = responses.readByte();
+                if (frame == ExtractionWorkerMain.BLOCK) {
+                    DocumentContent content = ExtractionWorkerMain.readBlock(responses);
+                    content.setDocument(document);
+                    // If the sink throws, the rest of this file's frames are unread and the worker is dropped
+                    sink.accept(content);
+                    blocks++;
+                } else if (frame == ExtractionWorkerMain.DONE) {
+                    return true;
+                } else if (frame == ExtractionWorkerMain.ERROR) {
+                    String message = ExtractionWorkerMain.readString(responses);
+                    if (blocks > 0) {
+                        // The blocks already handed on are kept, as with in-process extraction
+                        throw new ContentExtractor.ExtractionTruncatedException("Extraction worker " + number + " failed on "
+                                + filename + " after " + blocks + " blocks: " + message);
+                    }
+                    throw new ExtractionFailedException("Extraction worker " + number + " failed on " + filename + ": " + message);
+                } else {
+                    throw new IOException("Unexpected frame " + frame + " from extraction worker " + number);
+                }
+            }
+        }
+
+        /**
+         * Kill the worker (on timeout)
+         */
+        @Override
+        public void close() {
+            killed = true;
+            destroy();
+        }
+
+        /**
+         * Ask the worker to exit after its last file, by closing its input
+         */
+        private void retire() {
+            try {
+                requests.close();
+            } catch (IOException e) {
+                // exits anyway once its input is gone
+            }
+            process.onExit().orTimeout(30, TimeUnit.SECONDS).whenComplete((exited, error) -> destroy());
+        }
+
+        private synchronized void destroy() {
+            if (!gone) {
+                gone = true;
+                liveWorkers.decrementAndGet();
+            }
+            process.destroyForcibly();
+        }
+
+        private int exitCode() {
+            try {
+                return process.waitFor(5, TimeUnit.SECONDS) ? process.exitValue() : -1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * The worker reported an extraction error; the worker itself is fine
+     */
+    private static class ExtractionFailedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private ExtractionFailedException(String message) {
+            super(message);
+        }
+    }
+}
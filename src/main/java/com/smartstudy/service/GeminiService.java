@@ -2,6 +2,10 @@ package com.smartstudy.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartstudy.config.VirtualThreads;
+import com.smartstudy.model.Document;
+import com.smartstudy.repository.DocumentRepository;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
@@ -10,8 +14,10 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Semaphore;
 import java.util.stream.Collectors;
 
 /**
@@ -23,15 +29,30 @@ public class GeminiService {
     @Autowired
     private SearchService searchService;
     
+    @Autowired
+    private DocumentRepository documentRepository;
+    
+    @Autowired
+    private VirtualThreads virtualThreads;
+    
+    @Value("${ai.concepts.from-keyphrases:true}")
+    private boolean conceptsFromKeyphrases;
+    
     @Value("${gemini.api.key}")
     private String apiKey;
     
     @Value("${gemini.api.url}")
     private String apiUrl;
     
+    @Value("${gemini.max-concurrent-calls:16}")
+    private int maxConcurrentCalls;
+    
     private final WebClient webClient;
     private final ObjectMapper objectMapper;
     
+    // Caps calls in flight with virtual threads, where the request pool no longer does; null otherwise
+    private Semaphore callPermits;
+    
     public GeminiService() {
         this.webClient = WebClient.builder()
                 .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
@@ -39,6 +60,13 @@ public class GeminiService {
         this.objectMapper = new ObjectMapper();
     }
     
+    @PostConstruct
+    public void init() {
+        if (virtualThreads.isActive()) {
+            callPermits = new Semaphore(Math.max(1, maxConcurrentCalls), true);
+        }
+    }
+    
     /**
      * Generate AI-powered answer to a question based on document content
      */
@@ -279,6 +307,16 @@ public class GeminiService {
      * Extract key concepts from document content
      */
     public List<String> extractKeyConcepts(Long documentId, int maxResults) throws Exception {
+        // Keyphrases extracted at ingestion answer this without an API call
+        if (conceptsFromKeyphrases) {
+            String keyphrases = documentRepository.findById(documentId).map(Document::getKeyphrases).orElse(null);
+            if (keyphrases != null && !keyphrases.isBlank()) {
+                return Arrays.stream(keyphrases.split(KeyphraseExtractor.SEPARATOR))
+                        .limit(maxResults)
+                        .collect(Collectors.toList());
+            }
+        }
+        
         // Fetch content only from the specified document
         List<SearchService.SearchResult> searchResults = searchService.search("", 1000);
         List<SearchService.SearchResult> filteredResults = searchResults.stream()
@@ -352,16 +390,26 @@ public class GeminiService {
                     )
                 );
                 
-                // Make API call
-                String response = webClient.post()
-                        .uri(apiUrl + "?key=" + apiKey)
-                        .bodyValue(requestBody)
-                        .retrieve()
-                        .onStatus(status -> status.is5xxServerError() || status.is4xxClientError(),
-                                clientResponse -> clientResponse.bodyToMono(String.class)
-                                        .flatMap(errorBody -> Mono.error(new RuntimeException("API Error: " + clientResponse.statusCode() + " - " + errorBody))))
-                        .bodyToMono(String.class)
-                        .block();
+                // Make API call; block() parks a virtual thread instead of holding a platform thread
+                String response;
+                if (callPermits != null) {
+                    callPermits.acquire();
+                }
+                try {
+                    response = webClient.post()
+                            .uri(apiUrl + "?key=" + apiKey)
+                            .bodyValue(requestBody)
+                            .retrieve()
+                            .onStatus(status -> status.is5xxServerError() || status.is4xxClientError(),
+                                    clientResponse -> clientResponse.bodyToMono(String.class)
+                                            .flatMap(errorBody -> Mono.error(new RuntimeException("API Error: " + clientResponse.statusCode() + " - " + errorBody))))
+                            .bodyToMono(String.class)
+                            .block();
+                } finally {
+                    if (callPermits != null) {
+                        callPermits.release();
+                    }
+                }
                 
                 if (response == null) {
                     throw new RuntimeException("No response from Gemini API");
@@ -385,6 +433,10 @@ public class GeminiService {
                 
                 throw new RuntimeException("Invalid response format from Gemini API");
                 
+            } catch (InterruptedException e) {
+                // Interrupted waiting for a call permit: give up instead of retrying
+                Thread.currentThread().interrupt();
+                throw e;
             } catch (Exception e) {
                 retryCount++;
                 System.err.println("❌ Gemini API call failed (attempt " + retryCount + "/" + maxRetries + "): " + e.getMessage());
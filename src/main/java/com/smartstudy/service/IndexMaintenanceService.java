@@ -0,0 +1,225 @@
+package com.smartstudy.service;
+
+import com.smartstudy.config.IndexPartitionRegistry;
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.MergeScheduler;
+import org.apache.lucene.index.SegmentCommitInfo;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Service for off-peak Lucene index maintenance (merging segments and reclaiming deletes)
+ *
+ * Merges run on the IndexWriter's merge threads while searches keep reading the last
+ * commit point and ingestion keeps adding documents, so nothing waits on a maintenance run.
+ * With partitioning enabled every partition is maintained too, one after the other.
+ */
+@Service
+public class IndexMaintenanceService {
+
+    // Absent on replica nodes, which receive already-merged segments from the primary
+    @Autowired(required = false)
+    private IndexWriter indexWriter;
+
+    @Autowired
+    private FSDirectory indexDirectory;
+
+    @Autowired
+    private IndexPartitionRegistry partitionRegistry;
+
+    @Value("${lucene.partitioning.enabled:false}")
+    private boolean partitioningEnabled;
+
+    @Value("${lucene.maintenance.enabled:true}")
+    private boolean maintenanceEnabled;
+
+    @Value("${lucene.maintenance.deletes-threshold:0.10}")
+    private double deletesThreshold;
+
+    @Value("${lucene.maintenance.max-segments:0}")
+    private int maxSegments;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    private volatile Map<String, Object> lastReport;
+
+    /**
+     * Scheduled maintenance window
+     */
+    @Scheduled(cron = "${lucene.maintenance.cron:0 30 3 * * *}")
+    public void scheduledMaintenance() {
+        if (!maintenanceEnabled || indexWriter == null) {
+            return;
+        }
+        runMaintenance(false);
+    }
+
+    /**
+     * Run a maintenance pass. Unless forced, deletes are only expunged once they exceed
+     * the configured deletion ratio.
+     */
+    public Map<String, Object> runMaintenance(boolean force) {
+        if (indexWriter == null) {
+            throw new IllegalStateException("Index maintenance runs on the primary node only");
+        }
+        if (!running.compareAndSet(false, true)) {
+            Map<String, Object> busy = new HashMap<>();
+            busy.put("status", "ALREADY_RUNNING");
+            return busy;
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("startedAt", LocalDateTime.now());
+        long startTime = System.currentTimeMillis();
+
+        try {
+            System.out.println("🧹 Starting index maintenance...");
+            report.putAll(maintain("index", indexWriter, indexDirectory, force));
+            if (partitioningEnabled) {
+                Map<String, Object> partitionReports = new LinkedHashMap<>();
+                for (String partition : partitionRegistry.listPartitions()) {
+                    partitionReports.put(partition, maintain("partition " + partition, partitionRegistry.writer(partition),
+                            partitionRegistry.directory(partition), force));
+                }
+                report.put("partitions", partitionReports);
+            }
+            report.put("status", "COMPLETED");
+        } catch (Exception e) {
+            System.err.println("❌ Index maintenance failed: " + e.getMessage());
+            report.put("status", "FAILED");
+            report.put("error", e.getMessage());
+        } finally {
+            report.put("durationMs", System.currentTimeMillis() - startTime);
+            lastReport = report;
+            running.set(false);
+        }
+
+        return report;
+    }
+
+    /**
+     * Merge one index (the main index or a partition) as needed and report what was done
+     */
+    private Map<String, Object> maintain(String name, IndexWriter writer, Directory directory, boolean force) throws IOException {
+        Map<String, Object> report = new LinkedHashMap<>();
+        Map<String, Object> before = getIndexHealth(writer, directory);
+        long bytesBefore = (long) before.get("sizeInBytes");
+        double deletionRatio = (double) before.get("deletionRatio");
+        report.put("before", before);
+
+        String action;
+        if (maxSegments > 0 && (force || (int) before.get("segmentCount") > maxSegments)) {
+            action = "FORCE_MERGE";
+            writer.forceMerge(maxSegments, true);
+        } else if (force || deletionRatio >= deletesThreshold) {
+            action = "EXPUNGE_DELETES";
+            writer.forceMergeDeletes(true);
+        } else {
+            action = "SKIPPED";
+        }
+
+        if (!action.equals("SKIPPED")) {
+            // Commit so the merged segments become the searchable commit point and old files are released
+            writer.commit();
+            writer.deleteUnusedFiles();
+        }
+
+        Map<String, Object> after = getIndexHealth(writer, directory);
+        report.put("after", after);
+        report.put("action", action);
+        report.put("reclaimedBytes", Math.max(0, bytesBefore - (long) after.get("sizeInBytes")));
+
+        System.out.println("✅ Index maintenance of " + name + " " + action + ": segments " + before.get("segmentCount") +
+                           " -> " + after.get("segmentCount") + ", reclaimed " + report.get("reclaimedBytes") + " bytes");
+        return report;
+    }
+
+    /**
+     * Get segment count, deletion ratio and size of the last commit point
+     */
+    public Map<String, Object> getIndexHealth() throws IOException {
+        return getIndexHealth(indexWriter, indexDirectory);
+    }
+
+    private Map<String, Object> getIndexHealth(IndexWriter writer, Directory directory) throws IOException {
+        Map<String, Object> health = new LinkedHashMap<>();
+
+        int segmentCount = 0;
+        long maxDoc = 0;
+        long deletedDocs = 0;
+        try {
+            SegmentInfos segmentInfos = SegmentInfos.readLatestCommit(directory);
+            segmentCount = segmentInfos.size();
+            for (SegmentCommitInfo info : segmentInfos) {
+                maxDoc += info.info.maxDoc();
+                deletedDocs += info.getDelCount();
+            }
+        } catch (org.apache.lucene.index.IndexNotFoundException e) {
+            // Nothing committed yet
+        }
+
+        health.put("segmentCount", segmentCount);
+        health.put("maxDoc", maxDoc);
+        health.put("deletedDocs", deletedDocs);
+        health.put("deletionRatio", maxDoc > 0 ? (double) deletedDocs / maxDoc : 0.0);
+        health.put("sizeInBytes", directorySize(directory));
+
+        MergeScheduler mergeScheduler = writer != null ? writer.getConfig().getMergeScheduler() : null;
+        if (mergeScheduler instanceof ConcurrentMergeScheduler) {
+            ConcurrentMergeScheduler cms = (ConcurrentMergeScheduler) mergeScheduler;
+            health.put("forceMergeMBPerSec", cms.getForceMergeMBPerSec());
+            health.put("activeMergeThreads", cms.mergeThreadCount());
+        }
+        return health;
+    }
+
+    /**
+     * Get the status of the maintenance scheduler and the last run
+     */
+    public Map<String, Object> getMaintenanceStatus() throws IOException {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", maintenanceEnabled);
+        status.put("running", running.get());
+        status.put("deletesThreshold", deletesThreshold);
+        status.put("maxSegments", maxSegments);
+        status.put("index", getIndexHealth());
+        if (partitioningEnabled && indexWriter != null) {
+            Map<String, Object> partitions = new LinkedHashMap<>();
+            for (String partition : partitionRegistry.listPartitions()) {
+                partitions.put(partition, getIndexHealth(partitionRegistry.writer(partition), partitionRegistry.directory(partition)));
+            }
+            status.put("partitions", partitions);
+        }
+        status.put("lastRun", lastReport);
+        return status;
+    }
+
+    /**
+     * Total size of the files currently in the index directory
+     */
+    private long directorySize(Directory directory) throws IOException {
+        long total = 0;
+        for (String file : directory.listAll()) {
+            try {
+                total += directory.fileLength(file);
+            } catch (NoSuchFileException e) {
+                // Removed by a concurrent merge or commit
+            }
+        }
+        return total;
+    }
+}
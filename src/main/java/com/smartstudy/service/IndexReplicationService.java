@@ -0,0 +1,284 @@
+package com.smartstudy.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.index.IndexNotFoundException;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.SnapshotDeletionPolicy;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Service for primary/replica replication of the Lucene index through a shared filesystem path
+ *
+ * The primary pins its latest commit point, copies the new segment files to the shared path and
+ * writes the segments_N file last. Replicas poll the shared path, copy the files they are missing
+ * into their own index directory (again segments_N last) and pick the new commit up on their next
+ * search, since every search opens a fresh reader on the latest local commit.
+ */
+@Service
+public class IndexReplicationService {
+
+    public static final String ROLE_STANDALONE = "standalone";
+    public static final String ROLE_PRIMARY = "primary";
+    public static final String ROLE_REPLICA = "replica";
+
+    // A prefix, not a suffix: Lucene parses every file starting with "segments" as a commit point,
+    // so "segments_N.tmp" would break readers opening the directory mid-copy
+    private static final String TEMP_PREFIX = "replicating_";
+
+    @Autowired
+    private FSDirectory indexDirectory;
+
+    @Autowired
+    private SnapshotDeletionPolicy snapshotDeletionPolicy;
+
+    // Only present on primary/standalone nodes
+    @Autowired(required = false)
+    private IndexWriter indexWriter;
+
+    @Value("${lucene.replication.role:standalone}")
+    private String role;
+
+    @Value("${lucene.replication.shared-directory:}")
+    private String sharedDirectoryPath;
+
+    @Value("${lucene.partitioning.enabled:false}")
+    private boolean partitioningEnabled;
+
+    private FSDirectory sharedDirectory;
+
+    private volatile long lastGeneration = -1;
+    private volatile LocalDateTime lastReplicatedAt;
+    private volatile long lastReplicationMs;
+    private volatile int lastFilesCopied;
+    private volatile String lastError;
+
+    // A lock rather than synchronized, so a virtual thread copying files doesn't pin its carrier
+    private final ReentrantLock replicationLock = new ReentrantLock();
+
+    // Files of the previous commit are kept one extra round for readers still opening it
+    private Set<String> previousCommitFiles = new HashSet<>();
+
+    /**
+     * Refuse to start with partitioning enabled: only the unpartitioned index is replicated, so
+     * replicas would silently serve none of the partitions
+     */
+    @PostConstruct
+    public void checkConfiguration() {
+        if (!ROLE_STANDALONE.equalsIgnoreCase(role) && partitioningEnabled) {
+            throw new IllegalStateException("Index replication (lucene.replication.role=" + role
+                    + ") does not support lucene.partitioning.enabled=true");
+        }
+    }
+
+    /**
+     * Publish (primary) or pull (replica) the latest commit point
+     */
+    @Scheduled(fixedDelayString = "${lucene.replication.poll-interval-ms:5000}")
+    public void replicate() {
+        if (ROLE_STANDALONE.equalsIgnoreCase(role)) {
+            return;
+        }
+
+        replicationLock.lock();
+        try {
+            if (ROLE_PRIMARY.equalsIgnoreCase(role)) {
+                publishLatestCommit();
+            } else if (ROLE_REPLICA.equalsIgnoreCase(role)) {
+                pullLatestCommit();
+            }
+            lastError = null;
+        } catch (Exception e) {
+            lastError = e.getMessage();
+            System.err.println("⚠️ Index replication failed (" + role + "): " + e.getMessage());
+        } finally {
+            replicationLock.unlock();
+        }
+    }
+
+    /**
+     * Copy the latest commit of the local index to the shared path
+     */
+    private void publishLatestCommit() throws IOException {
+        if (indexWriter == null) {
+            throw new IllegalStateException("Primary node has no IndexWriter");
+        }
+
+        IndexCommit commit;
+        try {
+            commit = snapshotDeletionPolicy.snapshot();
+        } catch (IllegalStateException e) {
+            // No commit has been made yet
+            return;
+        }
+
+        try {
+            if (commit.getGeneration() <= lastGeneration) {
+                return;
+            }
+
+            long startTime = System.currentTimeMillis();
+            int copied = copyCommit(indexDirectory, sharedDirectory(), commit.getFileNames(),
+                                    commit.getSegmentsFileName(), lastGeneration < 0);
+            recordReplication(commit.getGeneration(), copied, startTime);
+            System.out.println("📤 Published index commit generation " + commit.getGeneration() +
+                               " (" + copied + " new files) to " + sharedDirectoryPath);
+        } finally {
+            snapshotDeletionPolicy.release(commit);
+            indexWriter.deleteUnusedFiles();
+        }
+    }
+
+    /**
+     * Copy the latest published commit from the shared path into the local index
+     */
+    private void pullLatestCommit() throws IOException {
+        SegmentInfos published;
+        try {
+            published = SegmentInfos.readLatestCommit(sharedDirectory());
+        } catch (IndexNotFoundException e) {
+            // Primary hasn't published anything yet
+            return;
+        }
+
+        if (published.getGeneration() <= lastGeneration) {
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+        int copied = copyCommit(sharedDirectory(), indexDirectory, published.files(true),
+                                published.getSegmentsFileName(), lastGeneration < 0);
+        recordReplication(published.getGeneration(), copied, startTime);
+        System.out.println("📥 Replicated index commit generation " + published.getGeneration() +
+                           " (" + copied + " new files) from " + sharedDirectoryPath);
+    }
+
+    /**
+     * Copy the files of one commit point, segments_N last so readers only ever see complete commits,
+     * then drop files that neither this nor the previous commit references. The first round after
+     * startup copies everything, since files left from an earlier run may belong to another index.
+     */
+    private int copyCommit(Directory source, Directory target, Collection<String> commitFiles,
+                           String segmentsFileName, boolean fullCopy) throws IOException {
+        Set<String> existing = new HashSet<>(List.of(target.listAll()));
+        List<String> toCopy = new ArrayList<>();
+        for (String file : commitFiles) {
+            // Segment files are write-once, so a file that already exists never needs copying again
+            if (!file.equals(segmentsFileName) && (fullCopy || !existing.contains(file))) {
+                toCopy.add(file);
+            }
+        }
+
+        for (String file : toCopy) {
+            copyFile(source, target, file);
+        }
+        target.sync(toCopy);
+
+        copyFile(source, target, segmentsFileName);
+        target.sync(List.of(segmentsFileName));
+        target.syncMetaData();
+
+        Set<String> keep = new HashSet<>(commitFiles);
+        keep.addAll(previousCommitFiles);
+        for (String file : target.listAll()) {
+            if (!keep.contains(file) && !file.equals(IndexWriter.WRITE_LOCK_NAME)) {
+                try {
+                    target.deleteFile(file);
+                } catch (IOException e) {
+                    System.err.println("⚠️ Could not delete stale index file " + file + ": " + e.getMessage());
+                }
+            }
+        }
+        previousCommitFiles = new HashSet<>(commitFiles);
+
+        return toCopy.size() + 1;
+    }
+
+    /**
+     * Copy a single file under a temporary name and rename it into place
+     */
+    private void copyFile(Directory source, Directory target, String file) throws IOException {
+        String tempName = TEMP_PREFIX + file;
+        try {
+            target.deleteFile(tempName);
+        } catch (IOException ignore) {
+            // No leftover from an interrupted copy
+        }
+        target.copyFrom(source, file, tempName, IOContext.READONCE);
+        target.rename(tempName, file);
+    }
+
+    /**
+     * Remember the outcome of the last replication round
+     */
+    private void recordReplication(long generation, int filesCopied, long startTime) {
+        lastGeneration = generation;
+        lastFilesCopied = filesCopied;
+        lastReplicationMs = System.currentTimeMillis() - startTime;
+        lastReplicatedAt = LocalDateTime.now();
+    }
+
+    /**
+     * Lazily open the shared replication directory
+     */
+    private FSDirectory sharedDirectory() throws IOException {
+        if (sharedDirectory == null) {
+            if (sharedDirectoryPath == null || sharedDirectoryPath.trim().isEmpty()) {
+                throw new IllegalStateException("lucene.replication.shared-directory must be set for role " + role);
+            }
+            Path sharedPath = Paths.get(sharedDirectoryPath);
+            if (!Files.exists(sharedPath)) {
+                Files.createDirectories(sharedPath);
+            }
+            sharedDirectory = FSDirectory.open(sharedPath);
+        }
+        return sharedDirectory;
+    }
+
+    /**
+     * Get replication role and progress
+     */
+    public Map<String, Object> getReplicationStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("role", role);
+        status.put("sharedDirectory", sharedDirectoryPath);
+        status.put("generation", lastGeneration);
+        status.put("lastReplicatedAt", lastReplicatedAt);
+        status.put("lastReplicationMs", lastReplicationMs);
+        status.put("lastFilesCopied", lastFilesCopied);
+        status.put("lastError", lastError);
+        return status;
+    }
+
+    /**
+     * Close the shared directory on shutdown
+     */
+    @PreDestroy
+    public void close() throws IOException {
+        if (sharedDirectory != null) {
+            sharedDirectory.close();
+        }
+    }
+}
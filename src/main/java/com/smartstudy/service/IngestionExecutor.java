@@ -0,0 +1,233 @@
+package com.smartstudy.service;
+
+import com.smartstudy.config.VirtualThreads;
+import com.smartstudy.model.Document;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, prioritized executor for document ingestion (parsing, persisting and indexing uploads)
+ *
+ * Queued work is ordered by lane, so small files are picked up ahead of large files and ZIP
+ * archives, and FIFO within a lane. The queue is capped; once it is full new work is rejected
+ * instead of piling up parses on the heap.
+ */
+@Component
+public class IngestionExecutor {
+
+    /**
+     * Priority lanes, highest priority first
+     */
+    public enum Lane {
+        SMALL,
+        LARGE,
+        BULK
+    }
+
+    @Autowired
+    private VirtualThreads virtualThreads;
+
+    @Value("${ingestion.executor.core-size:2}")
+    private int coreSize;
+
+    @Value("${ingestion.executor.queue-capacity:100}")
+    private int queueCapacity;
+
+    @Value("${ingestion.executor.small-file-threshold-mb:5}")
+    private long smallFileThresholdMb;
+
+    private ThreadPoolExecutor executor;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong rejectedTasks = new AtomicLong();
+    private final AtomicLong startedTasks = new AtomicLong();
+    private final AtomicLong totalWaitMs = new AtomicLong();
+    private final AtomicLong maxWaitMs = new AtomicLong();
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private final AtomicLong finishedTasks = new AtomicLong();
+    private final AtomicLong totalProcessingMs = new AtomicLong();
+    private final AtomicLong processedBytes = new AtomicLong();
+    private final Map<Lane, AtomicInteger> queuedByLane = new EnumMap<>(Lane.class);
+
+    @PostConstruct
+    public void start() {
+        for (Lane lane : Lane.values()) {
+            queuedByLane.put(lane, new AtomicInteger());
+        }
+        // Workers block on the database and index between parses; the pool size still caps concurrent parses
+        executor = new ThreadPoolExecutor(coreSize, coreSize, 60, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(), virtualThreads.newThreadFactory("ingestion-"));
+        System.out.println("⚙️ Ingestion executor started with " + coreSize + (virtualThreads.isActive() ? " virtual" : "")
+                + " workers, queue capacity " + queueCapacity);
+    }
+
+    /**
+     * Lane a document belongs in, based on its type and size
+     */
+    public Lane laneFor(Document document) {
+        if (".zip".equalsIgnoreCase(document.getFileType())) {
+            return Lane.BULK;
+        }
+        long size = document.getFileSize() != null ? document.getFileSize() : 0;
+        return size <= smallFileThresholdMb * 1024 * 1024 ? Lane.SMALL : Lane.LARGE;
+    }
+
+    /**
+     * Queue ingestion work for a document
+     *
+     * @throws RejectedExecutionException when the queue is full
+     */
+    public synchronized void execute(Document document, Runnable task) {
+        if (executor.getQueue().size() >= queueCapacity) {
+            rejectedTasks.incrementAndGet();
+            throw new RejectedExecutionException("Ingestion queue is full (" + queueCapacity + " waiting)");
+        }
+        Lane lane = laneFor(document);
+        long bytes = document.getFileSize() != null ? document.getFileSize() : 0;
+        queuedByLane.get(lane).incrementAndGet();
+        pendingBytes.addAndGet(bytes);
+        executor.execute(new PrioritizedTask(lane, sequence.incrementAndGet(), bytes, task));
+    }
+
+    /**
+     * Number of tasks waiting for a worker
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Maximum number of waiting tasks
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Number of workers currently processing a document
+     */
+    public int getActiveWorkers() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Number of workers
+     */
+    public int getCoreSize() {
+        return coreSize;
+    }
+
+    /**
+     * Bytes of uploaded files queued or being processed
+     */
+    public long getPendingBytes() {
+        return pendingBytes.get();
+    }
+
+    /**
+     * Average time a worker spends on one document, or 0 before anything has finished
+     */
+    public long getAverageProcessingMs() {
+        long finished = finishedTasks.get();
+        return finished > 0 ? totalProcessingMs.get() / finished : 0;
+    }
+
+    /**
+     * Average processing throughput of one worker in bytes per second, or 0 before anything has finished
+     */
+    public long getBytesPerSecond() {
+        long processingMs = totalProcessingMs.get();
+        return processingMs > 0 ? processedBytes.get() * 1000 / processingMs : 0;
+    }
+
+    /**
+     * Get queue depth, worker and wait time statistics
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("coreSize", coreSize);
+        stats.put("virtualThreads", virtualThreads.isActive());
+        stats.put("poolSize", executor.getPoolSize());
+        stats.put("activeWorkers", executor.getActiveCount());
+        stats.put("queueDepth", executor.getQueue().size());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("pendingBytes", pendingBytes.get());
+
+        Map<String, Integer> byLane = new LinkedHashMap<>();
+        for (Lane lane : Lane.values()) {
+            byLane.put(lane.name(), queuedByLane.get(lane).get());
+        }
+        stats.put("queueDepthByLane", byLane);
+
+        long started = startedTasks.get();
+        stats.put("completedTasks", executor.getCompletedTaskCount());
+        stats.put("rejectedTasks", rejectedTasks.get());
+        stats.put("averageWaitMs", started > 0 ? totalWaitMs.get() / started : 0);
+        stats.put("maxWaitMs", maxWaitMs.get());
+        stats.put("averageProcessingMs", getAverageProcessingMs());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Queued task ordered by lane, then by submission order
+     */
+    private class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+        private final Lane lane;
+        private final long sequenceNumber;
+        private final long bytes;
+        private final Runnable task;
+        private final long enqueuedAt = System.currentTimeMillis();
+
+        private PrioritizedTask(Lane lane, long sequenceNumber, long bytes, Runnable task) {
+            this.lane = lane;
+            this.sequenceNumber = sequenceNumber;
+            this.bytes = bytes;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            queuedByLane.get(lane).decrementAndGet();
+            long waitMs = System.currentTimeMillis() - enqueuedAt;
+            startedTasks.incrementAndGet();
+            totalWaitMs.addAndGet(waitMs);
+            maxWaitMs.accumulateAndGet(waitMs, Math::max);
+
+            long startTime = System.currentTimeMillis();
+            try {
+                task.run();
+            } catch (Exception e) {
+                System.err.println("❌ Ingestion task failed: " + e.getMessage());
+            } finally {
+                pendingBytes.addAndGet(-bytes);
+                processedBytes.addAndGet(bytes);
+                totalProcessingMs.addAndGet(System.currentTimeMillis() - startTime);
+                finishedTasks.incrementAndGet();
+            }
+        }
+
+        @Override
+        public int compareTo(PrioritizedTask other) {
+            int laneCompare = lane.compareTo(other.lane);
+            return laneCompare != 0 ? laneCompare : Long.compare(sequenceNumber, other.sequenceNumber);
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.smartstudy.service;
+
+import com.smartstudy.model.Document;
+import com.smartstudy.model.Document.DocumentStatus;
+import com.smartstudy.model.IngestionJob;
+import com.smartstudy.model.IngestionJob.JobState;
+import com.smartstudy.model.IngestionJob.JobType;
+import com.smartstudy.repository.DocumentRepository;
+import com.smartstudy.repository.IngestionJobRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Service managing the persistent ingestion job table
+ *
+ * Jobs are claimed with row locks (SKIP LOCKED), so several app nodes can share one queue.
+ * A claim is a time-limited lease that the owning node keeps renewing while it works; when
+ * a node dies its leases run out and the jobs are picked up again from their checkpoint.
+ * Index replicas have no IndexWriter, so they queue jobs but never claim them.
+ */
+@Service
+public class IngestionJobService {
+    
+    private static final int MAX_ERROR_LENGTH = 2000;
+    
+    @Autowired
+    private IngestionJobRepository jobRepository;
+    
+    @Autowired
+    private DocumentRepository documentRepository;
+    
+    @Value("${ingestion.jobs.lease-seconds:300}")
+    private long leaseSeconds;
+    
+    @Value("${ingestion.jobs.max-attempts:3}")
+    private int maxAttempts;
+    
+    @Value("${ingestion.jobs.node-id:}")
+    private String configuredNodeId;
+    
+    @Value("${lucene.replication.role:standalone}")
+    private String replicationRole;
+    
+    private String nodeId;
+    
+    private final Set<String> heldLeases = ConcurrentHashMap.newKeySet();
+    
+    @PostConstruct
+    public void init() {
+        nodeId = configuredNodeId != null && !configuredNodeId.isBlank()
+                ? configuredNodeId
+                : ManagementFactory.getRuntimeMXBean().getName();
+        if (isReplica()) {
+            System.out.println("🧾 Index replica " + nodeId + " leaves ingestion jobs to the primary");
+        } else {
+            System.out.println("🧾 Ingestion jobs run as node " + nodeId);
+        }
+    }
+    
+    /**
+     * Whether this node may claim jobs; replicas can't write the index, so any job they ran would fail
+     */
+    public boolean canRunJobs() {
+        return !isReplica();
+    }
+    
+    private boolean isReplica() {
+        return IndexReplicationService.ROLE_REPLICA.equalsIgnoreCase(replicationRole);
+    }
+    
+    /**
+     * Queue (or re-queue) the job of a document, resetting its attempts and checkpoint
+     */
+    @Transactional
+    public IngestionJob enqueue(Long documentId, JobType jobType) {
+        IngestionJob job = jobRepository.findByDocumentId(documentId).orElseGet(IngestionJob::new);
+        if (job.getLeaseToken() != null) {
+            heldLeases.remove(job.getLeaseToken());
+        }
+        job.setDocumentId(documentId);
+        job.setJobType(jobType);
+        job.setState(JobState.QUEUED);
+        job.setAttempts(0);
+        job.setLastCompletedPage(null);
+        job.setLastError(null);
+        clearLease(job);
+        return jobRepository.save(job);
+    }
+    
+    /**
+     * Claim up to {@code max} runnable jobs for this node
+     */
+    @Transactional
+    public List<IngestionJob> claim(int max) {
+        List<IngestionJob> claimed = new ArrayList<>();
+        if (max <= 0 || !canRunJobs()) {
+            return claimed;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (IngestionJob job : jobRepository.findClaimable(now, PageRequest.of(0, max))) {
+            if (job.getState() == JobState.RUNNING) {
+                System.out.println("⏰ Lease of " + job.getLeaseOwner() + " on ingestion job " + job.getId() + " expired, reclaiming");
+                if (job.getAttempts() >= maxAttempts) {
+                    giveUp(job, "Lease expired after " + job.getAttempts() + " attempts");
+                    continue;
+                }
+            }
+            job.setState(JobState.RUNNING);
+            job.setAttempts(job.getAttempts() + 1);
+            job.setLeaseOwner(nodeId);
+            job.setLeaseToken(UUID.randomUUID().toString());
+            job.setLeaseExpiresAt(now.plusSeconds(leaseSeconds));
+            job.setUpdatedAt(now);
+            heldLeases.add(job.getLeaseToken());
+            claimed.add(job);
+        }
+        return claimed;
+    }
+    
+    /**
+     * Record the last page whose content is persisted
+     */
+    @Transactional
+    public void checkpoint(IngestionJob job, int page) {
+        if (jobRepository.checkpoint(job.getId(), job.getLeaseToken(), page, LocalDateTime.now()) > 0) {
+            job.setLastCompletedPage(page);
+        } else {
+            System.err.println("⚠️ Lost lease on ingestion job " + job.getId() + ", checkpoint not recorded");
+        }
+    }
+    
+    /**
+     * Mark a job done
+     */
+    @Transactional
+    public void complete(IngestionJob job) {
+        heldLeases.remove(job.getLeaseToken());
+        IngestionJob current = ownedJob(job);
+        if (current != null) {
+            current.setState(JobState.COMPLETED);
+            current.setLastError(null);
+            clearLease(current);
+        }
+    }
+    
+    /**
+     * Record a failed attempt, re-queueing the job while attempts remain
+     *
+     * @return true if the job has given up and the document should be marked failed
+     */
+    @Transactional
+    public boolean fail(IngestionJob job, String error) {
+        heldLeases.remove(job.getLeaseToken());
+        IngestionJob current = ownedJob(job);
+        if (current == null) {
+            // Re-queued or taken over meanwhile; the new owner decides
+            return false;
+        }
+        current.setLastError(truncate(error));
+        if (current.getAttempts() >= maxAttempts) {
+            current.setState(JobState.FAILED);
+            clearLease(current);
+            return true;
+        }
+        current.setState(JobState.QUEUED);
+        clearLease(current);
+        return false;
+    }
+    
+    /**
+     * Hand a claimed job back without counting the attempt (e.g. the local queue was full)
+     */
+    @Transactional
+    public void release(IngestionJob job) {
+        heldLeases.remove(job.getLeaseToken());
+        IngestionJob current = ownedJob(job);
+        if (current != null) {
+            current.setState(JobState.QUEUED);
+            current.setAttempts(Math.max(0, current.getAttempts() - 1));
+            clearLease(current);
+        }
+    }
+    
+    /**
+     * Drop the job of a deleted document
+     */
+    @Transactional
+    public void deleteForDocument(Long documentId) {
+        jobRepository.deleteByDocumentId(documentId);
+    }
+    
+    /**
+     * Keep this node's leases alive while their jobs run
+     */
+    @Scheduled(fixedDelayString = "${ingestion.jobs.heartbeat-ms:60000}")
+    @Transactional
+    public void renewLeases() {
+        if (heldLeases.isEmpty()) {
+            return;
+        }
+        jobRepository.renewLeases(new ArrayList<>(heldLeases), LocalDateTime.now().plusSeconds(leaseSeconds));
+    }
+    
+    /**
+     * Queue documents left in PROCESSING without a job (uploaded before the job table existed)
+     */
+    @Transactional
+    public int recoverOrphanedDocuments() {
+        Set<Long> withJob = new HashSet<>(jobRepository.findAllDocumentIds());
+        int recovered = 0;
+        for (Document document : documentRepository.findByStatus(DocumentStatus.PROCESSING)) {
+            if (!withJob.contains(document.getId())) {
+                enqueue(document.getId(), JobType.PROCESS);
+                recovered++;
+            }
+        }
+        if (recovered > 0) {
+            System.out.println("🧾 Queued " + recovered + " documents stuck in PROCESSING");
+        }
+        return recovered;
+    }
+    
+    /**
+     * Get job counts by state and this node's leases
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("nodeId", nodeId);
+        Map<String, Long> byState = new LinkedHashMap<>();
+        for (JobState state : JobState.values()) {
+            byState.put(state.name(), jobRepository.countByState(state));
+        }
+        stats.put("jobsByState", byState);
+        stats.put("heldLeases", heldLeases.size());
+        stats.put("leaseSeconds", leaseSeconds);
+        stats.put("maxAttempts", maxAttempts);
+        return stats;
+    }
+    
+    private IngestionJob ownedJob(IngestionJob job) {
+        IngestionJob current = jobRepository.findById(job.getId()).orElse(null);
+        if (current == null || job.getLeaseToken() == null || !job.getLeaseToken().equals(current.getLeaseToken())) {
+            return null;
+        }
+        current.setUpdatedAt(LocalDateTime.now());
+        return current;
+    }
+    
+    private void giveUp(IngestionJob job, String error) {
+        job.setState(JobState.FAILED);
+        job.setLastError(error);
+        job.setUpdatedAt(LocalDateTime.now());
+        clearLease(job);
+        documentRepository.findById(job.getDocumentId()).ifPresent(document -> {
+            document.setStatus(DocumentStatus.FAILED);
+            documentRepository.save(document);
+        });
+        System.err.println("❌ Ingestion job " + job.getId() + " failed: " + error);
+    }
+    
+    private void clearLease(IngestionJob job) {
+        job.setLeaseOwner(null);
+        job.setLeaseToken(null);
+        job.setLeaseExpiresAt(null);
+    }
+    
+    private String truncate(String error) {
+        if (error == null || error.length() <= MAX_ERROR_LENGTH) {
+            return error;
+        }
+        return error.substring(0, MAX_ERROR_LENGTH);
+    }
+}
@@ -0,0 +1,231 @@
+package com.smartstudy.service;
+
+import com.smartstudy.config.VirtualThreads;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stages that extracted content batches pass through after parsing: enrich (hashes and keyphrases),
+ * persist (database) and index (Lucene)
+ *
+ * Parsing itself is the extract stage and runs on the ingestion executor's workers. Every later
+ * stage has its own pool and a bounded number of waiting batches; a submitter blocks while a stage
+ * is full, so a slow database or index holds back the parsers instead of letting batches pile up on
+ * the heap. With the pipeline disabled every stage runs inline on the submitting thread.
+ */
+@Component
+public class IngestionPipeline {
+
+    @Autowired
+    private VirtualThreads virtualThreads;
+
+    @Value("${ingestion.pipeline.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ingestion.pipeline.enrich-threads:0}")
+    private int enrichThreads;
+
+    @Value("${ingestion.pipeline.persist-threads:2}")
+    private int persistThreads;
+
+    @Value("${ingestion.pipeline.index-threads:2}")
+    private int indexThreads;
+
+    @Value("${ingestion.pipeline.queue-capacity:8}")
+    private int queueCapacity;
+
+    private Stage enrich;
+    private Stage persist;
+    private Stage index;
+
+    @PostConstruct
+    public void start() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        // Enrichment is CPU-bound; persist and index wait on the database and disk
+        enrich = new Stage("enrich", enrichThreads > 0 ? enrichThreads : processors, false);
+        persist = new Stage("persist", Math.max(1, persistThreads), true);
+        index = new Stage("index", Math.max(1, indexThreads), true);
+        if (enabled) {
+            System.out.println("⚙️ Ingestion pipeline started: " + enrich.threads + " enrich, " + persist.threads
+                    + " persist, " + index.threads + " index workers, " + queueCapacity + " batches per stage queue");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        enrich.shutdown();
+        persist.shutdown();
+        index.shutdown();
+    }
+
+    private ThreadFactory platformThreadFactory(String namePrefix) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Stage that hashes blocks and extracts their keyphrases
+     */
+    public Stage enrich() { return enrich; }
+
+    /**
+     * Stage that saves blocks to the database
+     */
+    public Stage persist() { return persist; }
+
+    /**
+     * Stage that adds blocks to the search index
+     */
+    public Stage index() { return index; }
+
+    /**
+     * Get per-stage pool, queue, wait and throughput statistics
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("virtualThreads", enabled && virtualThreads.isActive());
+        stats.put("enrich", enrich.getStats());
+        stats.put("persist", persist.getStats());
+        stats.put("index", index.getStats());
+        return stats;
+    }
+
+    /**
+     * One pipeline stage: a fixed pool with a bounded number of queued batches
+     */
+    public class Stage {
+        private final String name;
+        private final int threads;
+        private final ExecutorService executor;
+        // One permit per running or queued batch
+        private final Semaphore slots;
+
+        private final AtomicLong submittedBatches = new AtomicLong();
+        private final AtomicLong completedBatches = new AtomicLong();
+        private final AtomicLong failedBatches = new AtomicLong();
+        private final AtomicLong processedBlocks = new AtomicLong();
+        private final AtomicLong totalQueueMs = new AtomicLong();
+        private final AtomicLong maxQueueMs = new AtomicLong();
+        private final AtomicLong totalRunMs = new AtomicLong();
+        private final AtomicLong blockedSubmits = new AtomicLong();
+        private final AtomicLong totalBlockedMs = new AtomicLong();
+
+        private Stage(String name, int threads, boolean blocking) {
+            this.name = name;
+            this.threads = threads;
+            this.slots = new Semaphore(threads + Math.max(1, queueCapacity));
+            this.executor = enabled ? new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(), blocking ? virtualThreads.newThreadFactory("ingest-" + name + "-")
+                            : platformThreadFactory("ingest-" + name + "-")) : null;
+        }
+
+        /**
+         * Run a task for a batch of blocks on this stage, waiting for room in its queue first
+         *
+         * @return a future completed with the task's outcome
+         */
+        public CompletableFuture<Void> submit(int blocks, Runnable task) {
+            submittedBatches.incrementAndGet();
+            if (!enabled) {
+                CompletableFuture<Void> result = new CompletableFuture<>();
+                run(blocks, task, System.currentTimeMillis(), result);
+                return result;
+            }
+            if (!slots.tryAcquire()) {
+                // Backpressure: hold the submitter until a batch ahead of it is done
+                blockedSubmits.incrementAndGet();
+                long blockedAt = System.currentTimeMillis();
+                try {
+                    slots.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RejectedExecutionException("Interrupted while waiting for the " + name + " stage", e);
+                } finally {
+                    totalBlockedMs.addAndGet(System.currentTimeMillis() - blockedAt);
+                }
+            }
+            CompletableFuture<Void> result = new CompletableFuture<>();
+            long queuedAt = System.currentTimeMillis();
+            try {
+                executor.execute(() -> {
+                    try {
+                        run(blocks, task, queuedAt, result);
+                    } finally {
+                        slots.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                slots.release();
+                throw e;
+            }
+            return result;
+        }
+
+        private void run(int blocks, Runnable task, long queuedAt, CompletableFuture<Void> result) {
+            long startTime = System.currentTimeMillis();
+            long queueMs = startTime - queuedAt;
+            totalQueueMs.addAndGet(queueMs);
+            maxQueueMs.accumulateAndGet(queueMs, Math::max);
+            try {
+                task.run();
+                processedBlocks.addAndGet(blocks);
+                completedBatches.incrementAndGet();
+                result.complete(null);
+            } catch (Throwable e) {
+                failedBatches.incrementAndGet();
+                result.completeExceptionally(e);
+            } finally {
+                totalRunMs.addAndGet(System.currentTimeMillis() - startTime);
+            }
+        }
+
+        private void shutdown() {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+
+        private Map<String, Object> getStats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            long finished = completedBatches.get() + failedBatches.get();
+            long runMs = totalRunMs.get();
+            stats.put("threads", threads);
+            stats.put("queueCapacity", queueCapacity);
+            stats.put("queueDepth", executor instanceof ThreadPoolExecutor pool ? pool.getQueue().size() : 0);
+            stats.put("activeWorkers", executor instanceof ThreadPoolExecutor pool ? pool.getActiveCount() : 0);
+            stats.put("submittedBatches", submittedBatches.get());
+            stats.put("completedBatches", completedBatches.get());
+            stats.put("failedBatches", failedBatches.get());
+            stats.put("processedBlocks", processedBlocks.get());
+            stats.put("averageQueueMs", finished > 0 ? totalQueueMs.get() / finished : 0);
+            stats.put("maxQueueMs", maxQueueMs.get());
+            stats.put("averageBatchMs", finished > 0 ? runMs / finished : 0);
+            // Per worker; multiply by threads for the stage's capacity
+            stats.put("blocksPerSecond", runMs > 0 ? processedBlocks.get() * 1000 / runMs : 0);
+            stats.put("blockedSubmits", blockedSubmits.get());
+            stats.put("blockedSubmitMs", totalBlockedMs.get());
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package com.smartstudy.service;
+
+import com.smartstudy.model.DocumentContent;
+import jakarta.annotation.PreDestroy;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Statistical keyphrase extraction for content blocks, replacing the old first-heading topic guess
+ *
+ * Candidates are RAKE-style: runs of words between stop words and punctuation, taken as phrases of
+ * up to {@code keyphrases.max-words} words. Each candidate is scored by its frequency in the block
+ * times the summed IDF of its words, with document frequencies read from the search index, so the
+ * scores sharpen as more documents arrive. Document-level phrases are aggregated from the
+ * per-block lists.
+ */
+@Service
+public class KeyphraseExtractor {
+
+    public static final String SEPARATOR = ", ";
+
+    private static final int MIN_WORD_LENGTH = 3;
+    private static final int MAX_BLOCK_CHARS = 500;
+    private static final int MAX_DOCUMENT_CHARS = 1000;
+    private static final int MAX_DOCUMENT_CANDIDATES = 5000;
+
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList((
+            "a about above after again against all also am an and any are as at be because been before being below " +
+            "between both but by can could did do does doing down during each either etc even ever every few for " +
+            "from further get gets got had has have having he her here hers herself him himself his how however i " +
+            "if in into is it its itself just least less let like made make many may me might more most much must " +
+            "my myself neither no nor not now of off often on once one only or other others our ours ourselves out " +
+            "over own per rather same see shall she should since so some such than that the their theirs them " +
+            "themselves then there therefore these they this those though through thus to too two under until up " +
+            "upon us use used uses using very via was we well were what when where whether which while who whom " +
+            "whose why will with within without would yet you your yours yourself yourselves page slide " +
+            "figure fig table example section chapter lecture note notes based first second next new need needs " +
+            "given give gives take takes keep keeps called known following including different various important " +
+            "general specific several around among across able").split(" ")));
+
+    @Autowired
+    private SearchService searchService;
+
+    @Value("${keyphrases.enabled:true}")
+    private boolean enabled;
+
+    @Value("${keyphrases.per-block:5}")
+    private int perBlock;
+
+    @Value("${keyphrases.per-document:20}")
+    private int perDocument;
+
+    @Value("${keyphrases.max-words:3}")
+    private int maxWords;
+
+    @Value("${keyphrases.stats-refresh-seconds:60}")
+    private long statsRefreshSeconds;
+
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    private volatile IndexReader corpusReader;
+    private volatile long corpusReaderOpenedAt;
+
+    private final AtomicLong blocksAnnotated = new AtomicLong();
+    private final AtomicLong totalExtractionNanos = new AtomicLong();
+
+    /**
+     * Set the keyphrases (and, if it has none yet, the topic) of a block that doesn't have keyphrases yet
+     */
+    public void annotate(DocumentContent content) {
+        if (!enabled || content.getKeyphrases() != null) {
+            return;
+        }
+        List<String> phrases = extract(content.getContent(), perBlock);
+        content.setKeyphrases(joinWithin(phrases, MAX_BLOCK_CHARS));
+        if (content.getTopic() == null) {
+            content.setTopic(phrases.isEmpty() ? "General Content" : phrases.get(0));
+        }
+    }
+
+    /**
+     * Top keyphrases of a piece of text, best first
+     *
+     * Candidates are single words, whole stop-word-delimited runs of up to max-words words, and
+     * shorter sub-phrases of longer runs that occur more than once. Plurals are counted with
+     * their singular.
+     */
+    public List<String> extract(String text, int max) {
+        long startTime = System.nanoTime();
+        int phraseWords = Math.max(1, maxWords);
+        Map<String, Integer> counts = new HashMap<>();
+        Map<String, Integer> subPhraseCounts = new HashMap<>();
+        Map<String, String> surfaceForms = new HashMap<>();
+        for (List<String> run : candidateRuns(text)) {
+            for (int start = 0; start < run.size(); start++) {
+                for (int end = start; end < run.size() && end < start + phraseWords; end++) {
+                    List<String> words = run.subList(start, end + 1);
+                    boolean wholeRun = words.size() == run.size();
+                    if (words.size() > 1 && !wholeRun) {
+                        subPhraseCounts.merge(countPhrase(words, surfaceForms), 1, Integer::sum);
+                    } else {
+                        counts.merge(countPhrase(words, surfaceForms), 1, Integer::sum);
+                    }
+                }
+            }
+        }
+        for (Map.Entry<String, Integer> subPhrase : subPhraseCounts.entrySet()) {
+            int total = subPhrase.getValue() + counts.getOrDefault(subPhrase.getKey(), 0);
+            if (total > 1 || counts.containsKey(subPhrase.getKey())) {
+                counts.put(subPhrase.getKey(), total);
+            }
+        }
+
+        Map<String, Double> idf = new HashMap<>();
+        Map<String, Double> scores = new HashMap<>();
+        IndexReader reader = acquireCorpusReader();
+        try {
+            int corpusSize = reader != null ? reader.numDocs() : 0;
+            for (Map.Entry<String, Integer> candidate : counts.entrySet()) {
+                String surface = surfaceForms.get(candidate.getKey());
+                String[] words = surface.split(" ");
+                double wordWeight = 0;
+                for (String word : words) {
+                    wordWeight += idf.computeIfAbsent(word, w -> inverseDocumentFrequency(reader, corpusSize, w));
+                }
+                scores.put(surface, candidate.getValue() * wordWeight);
+            }
+        } finally {
+            if (reader != null) {
+                releaseCorpusReader(reader);
+            }
+        }
+
+        List<String> selected = selectNonOverlapping(scores, max);
+        blocksAnnotated.incrementAndGet();
+        totalExtractionNanos.addAndGet(System.nanoTime() - startTime);
+        return selected;
+    }
+
+    /**
+     * Counting key of a phrase (plurals folded to the singular), remembering the first surface form seen
+     */
+    private static String countPhrase(List<String> words, Map<String, String> surfaceForms) {
+        StringBuilder key = new StringBuilder();
+        for (String word : words) {
+            if (key.length() > 0) {
+                key.append(' ');
+            }
+            boolean plural = word.length() > 4 && word.endsWith("s")
+                    && !word.endsWith("ss") && !word.endsWith("us") && !word.endsWith("is");
+            key.append(plural ? word.substring(0, word.length() - 1) : word);
+        }
+        String countingKey = key.toString();
+        surfaceForms.putIfAbsent(countingKey, String.join(" ", words));
+        return countingKey;
+    }
+
+    /**
+     * Accumulator for the document-level keyphrases of one document
+     */
+    public DocumentPhrases newDocumentPhrases() {
+        return new DocumentPhrases();
+    }
+
+    /**
+     * Get keyphrase extraction statistics
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long blocks = blocksAnnotated.get();
+        IndexReader reader = corpusReader;
+        stats.put("enabled", enabled);
+        stats.put("blocksAnnotated", blocks);
+        stats.put("averageExtractionMicros", blocks > 0 ? totalExtractionNanos.get() / blocks / 1000 : 0);
+        stats.put("corpusDocuments", reader != null ? reader.numDocs() : 0);
+        return stats;
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        IndexReader reader = corpusReader;
+        corpusReader = null;
+        if (reader != null) {
+            reader.decRef();
+        }
+    }
+
+    /**
+     * Runs of candidate words, split at stop words, short or numeric words, punctuation and line breaks
+     */
+    private List<List<String>> candidateRuns(String text) {
+        List<List<String>> runs = new ArrayList<>();
+        List<String> run = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : '\n';
+            if (Character.isLetterOrDigit(c)) {
+                word.append(Character.toLowerCase(c));
+                continue;
+            }
+            if (word.length() > 0) {
+                String w = word.toString();
+                word.setLength(0);
+                if (w.length() < MIN_WORD_LENGTH || STOP_WORDS.contains(w) || w.chars().allMatch(Character::isDigit)) {
+                    run = endRun(runs, run);
+                } else {
+                    run.add(w);
+                }
+            }
+            // Spaces, tabs and hyphens join words; anything else ends the phrase
+            if (c == '\n' || (!Character.isWhitespace(c) && c != '-')) {
+                run = endRun(runs, run);
+            }
+        }
+        return runs;
+    }
+
+    private List<String> endRun(List<List<String>> runs, List<String> run) {
+        if (run.isEmpty()) {
+            return run;
+        }
+        runs.add(run);
+        return new ArrayList<>();
+    }
+
+    /**
+     * Smoothed IDF of a word in the index's content field (1.0 for every word while the index is empty)
+     */
+    private double inverseDocumentFrequency(IndexReader reader, int corpusSize, String word) {
+        int documentFrequency = 0;
+        if (reader != null) {
+            try {
+                documentFrequency = reader.docFreq(new Term("content", word));
+            } catch (IOException e) {
+                // treat as unseen
+            }
+        }
+        return Math.log((corpusSize + 1.0) / (documentFrequency + 1.0)) + 1.0;
+    }
+
+    /**
+     * Best-scoring phrases, skipping any that contain or are contained in an already selected phrase
+     */
+    private static List<String> selectNonOverlapping(Map<String, Double> scores, int max) {
+        List<Map.Entry<String, Double>> ranked = new ArrayList<>(scores.entrySet());
+        ranked.sort(Map.Entry.<String, Double>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        List<String> selected = new ArrayList<>();
+        for (Map.Entry<String, Double> entry : ranked) {
+            if (selected.size() >= max) {
+                break;
+            }
+            String phrase = entry.getKey();
+            String padded = " " + phrase + " ";
+            boolean overlaps = selected.stream().anyMatch(s -> (" " + s + " ").contains(padded) || padded.contains(" " + s + " "));
+            if (!overlaps) {
+                selected.add(phrase);
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Join phrases in stored form, dropping trailing phrases that would not fit the column
+     */
+    private static String joinWithin(List<String> phrases, int maxChars) {
+        StringBuilder joined = new StringBuilder();
+        for (String phrase : phrases) {
+            int length = joined.length() + (joined.length() > 0 ? SEPARATOR.length() : 0) + phrase.length();
+            if (length > maxChars) {
+                break;
+            }
+            if (joined.length() > 0) {
+                joined.append(SEPARATOR);
+            }
+            joined.append(phrase);
+        }
+        return joined.toString();
+    }
+
+    /**
+     * Reader over the whole index, reopened at most every stats-refresh-seconds; null while no index exists
+     */
+    private IndexReader acquireCorpusReader() {
+        long now = System.currentTimeMillis();
+        if ((corpusReader == null || now - corpusReaderOpenedAt > statsRefreshSeconds * 1000) && refreshLock.tryLock()) {
+            // Whoever holds the lock refreshes; everyone else keeps using the previous snapshot
+            try {
+                if (corpusReader == null || now - corpusReaderOpenedAt > statsRefreshSeconds * 1000) {
+                    corpusReaderOpenedAt = now;
+                    IndexReader fresh = searchService.openCorpusReader();
+                    IndexReader previous = corpusReader;
+                    corpusReader = fresh;
+                    if (previous != null) {
+                        previous.decRef();
+                    }
+                }
+            } catch (IOException e) {
+                // No commit yet or unreadable index: score without corpus statistics until the next refresh
+            } finally {
+                refreshLock.unlock();
+            }
+        }
+        IndexReader reader = corpusReader;
+        return reader != null && reader.tryIncRef() ? reader : null;
+    }
+
+    private void releaseCorpusReader(IndexReader reader) {
+        try {
+            reader.decRef();
+        } catch (IOException e) {
+            System.err.println("⚠️ Could not release keyphrase statistics reader: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Aggregates block keyphrases into document keyphrases; a phrase scores more the more blocks rank it highly
+     */
+    public class DocumentPhrases {
+        private final Map<String, Double> scores = new HashMap<>();
+
+        /**
+         * Add a block's stored keyphrases
+         */
+        public void add(String blockKeyphrases) {
+            if (blockKeyphrases == null || blockKeyphrases.isBlank()) {
+                return;
+            }
+            String[] phrases = blockKeyphrases.split(SEPARATOR);
+            for (int rank = 0; rank < phrases.length; rank++) {
+                scores.merge(phrases[rank].toLowerCase(Locale.ROOT), (double) (phrases.length - rank), Double::sum);
+            }
+            if (scores.size() > MAX_DOCUMENT_CANDIDATES) {
+                // Keep the strongest half so long documents don't grow the map without bound
+                Set<String> keep = scores.entrySet().stream()
+                        .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                        .limit(MAX_DOCUMENT_CANDIDATES / 2)
+                        .map(Map.Entry::getKey)
+                        .collect(Collectors.toSet());
+                scores.keySet().retainAll(keep);
+            }
+        }
+
+        /**
+         * Document keyphrases, best first, in stored form, or null if no block had any
+         */
+        public String top() {
+            List<String> selected = selectNonOverlapping(scores, perDocument);
+            return selected.isEmpty() ? null : joinWithin(selected, MAX_DOCUMENT_CHARS);
+        }
+    }
+}
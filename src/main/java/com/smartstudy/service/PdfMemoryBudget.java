@@ -0,0 +1,179 @@
+package com.smartstudy.service;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Heap budget shared by every PDF load across the ingestion pool
+ *
+ * Each load reserves the memory its file is expected to need. PDFBox keeps at most that much
+ * in main memory and spills the rest to a scratch file; when the budget is used up, loads
+ * fall back to scratch-file-only parsing, which is slower but never risks the heap.
+ */
+@Component
+public class PdfMemoryBudget {
+
+    private static final long MB = 1024 * 1024;
+
+    /**
+     * How PDFs are buffered while parsing
+     */
+    public enum Mode {
+        AUTO,
+        MEMORY,
+        MIXED,
+        SCRATCH
+    }
+
+    private final String memoryMode;
+    private final long budgetMb;
+    private final double budgetHeapFraction;
+    private final double estimateFactor;
+    private final long minReservationMb;
+    private final String scratchDirectory;
+
+    private final AtomicLong reservedBytes = new AtomicLong();
+    private final AtomicLong memoryLoads = new AtomicLong();
+    private final AtomicLong mixedLoads = new AtomicLong();
+    private final AtomicLong scratchLoads = new AtomicLong();
+
+    /**
+     * Read the budget settings; also constructed directly by isolated extraction workers, which have no Spring context
+     */
+    public PdfMemoryBudget(Environment environment) {
+        memoryMode = environment.getProperty("ingestion.pdf.memory-mode", "auto");
+        budgetMb = environment.getProperty("ingestion.pdf.memory-budget-mb", Long.class, 0L);
+        budgetHeapFraction = environment.getProperty("ingestion.pdf.memory-budget-heap-fraction", Double.class, 0.25);
+        estimateFactor = environment.getProperty("ingestion.pdf.memory-estimate-factor", Double.class, 3.0);
+        minReservationMb = environment.getProperty("ingestion.pdf.min-reservation-mb", Long.class, 4L);
+        scratchDirectory = environment.getProperty("file.temp.directory", "");
+    }
+
+    /**
+     * Reserve memory for loading the given PDF; close the lease once the document is closed
+     */
+    public Lease lease(Path pdfPath) {
+        long fileSize;
+        try {
+            fileSize = Files.size(pdfPath);
+        } catch (Exception e) {
+            fileSize = 0;
+        }
+        Mode mode = mode();
+        if (mode == Mode.MEMORY) {
+            memoryLoads.incrementAndGet();
+            return new Lease(MemoryUsageSetting.setupMainMemoryOnly(), 0);
+        }
+        if (mode == Mode.SCRATCH) {
+            scratchLoads.incrementAndGet();
+            return new Lease(withScratchDirectory(MemoryUsageSetting.setupTempFileOnly()), 0);
+        }
+
+        long wanted = Math.max(minReservationMb * MB, (long) (fileSize * estimateFactor));
+        long reserved = reserve(wanted);
+        if (reserved < minReservationMb * MB) {
+            // Budget exhausted: parse from disk instead of competing for heap
+            release(reserved);
+            scratchLoads.incrementAndGet();
+            System.out.println("💽 PDF memory budget exhausted, parsing " + pdfPath.getFileName() + " with scratch file only");
+            return new Lease(withScratchDirectory(MemoryUsageSetting.setupTempFileOnly()), 0);
+        }
+        mixedLoads.incrementAndGet();
+        return new Lease(withScratchDirectory(MemoryUsageSetting.setupMixed(reserved)), reserved);
+    }
+
+    /**
+     * Get the budget and how loads were buffered
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("mode", mode().name());
+        stats.put("budgetBytes", budgetBytes());
+        stats.put("reservedBytes", reservedBytes.get());
+        stats.put("memoryLoads", memoryLoads.get());
+        stats.put("mixedLoads", mixedLoads.get());
+        stats.put("scratchLoads", scratchLoads.get());
+        return stats;
+    }
+
+    /**
+     * Take up to {@code wanted} bytes from the budget, limited by what the heap has free right now
+     */
+    private long reserve(long wanted) {
+        Runtime runtime = Runtime.getRuntime();
+        long heapAvailable = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        while (true) {
+            long current = reservedBytes.get();
+            long granted = Math.max(0, Math.min(wanted, Math.min(budgetBytes() - current, heapAvailable / 2)));
+            if (reservedBytes.compareAndSet(current, current + granted)) {
+                return granted;
+            }
+        }
+    }
+
+    private void release(long bytes) {
+        if (bytes > 0) {
+            reservedBytes.addAndGet(-bytes);
+        }
+    }
+
+    private long budgetBytes() {
+        if (budgetMb > 0) {
+            return budgetMb * MB;
+        }
+        return (long) (Runtime.getRuntime().maxMemory() * budgetHeapFraction);
+    }
+
+    private Mode mode() {
+        try {
+            return Mode.valueOf(memoryMode.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return Mode.AUTO;
+        }
+    }
+
+    private MemoryUsageSetting withScratchDirectory(MemoryUsageSetting setting) {
+        if (scratchDirectory != null && !scratchDirectory.isBlank()) {
+            File directory = Paths.get(scratchDirectory).toFile();
+            if (directory.isDirectory() || directory.mkdirs()) {
+                setting.setTempDir(directory);
+            }
+        }
+        return setting;
+    }
+
+    /**
+     * Memory settings for one PDF load, holding its share of the budget until closed
+     */
+    public class Lease implements AutoCloseable {
+        private final MemoryUsageSetting memoryUsageSetting;
+        private final long bytes;
+        private boolean released;
+
+        private Lease(MemoryUsageSetting memoryUsageSetting, long bytes) {
+            this.memoryUsageSetting = memoryUsageSetting;
+            this.bytes = bytes;
+        }
+
+        public MemoryUsageSetting getMemoryUsageSetting() { return memoryUsageSetting; }
+
+        public long getBytes() { return bytes; }
+
+        @Override
+        public synchronized void close() {
+            if (!released) {
+                released = true;
+                release(bytes);
+            }
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.smartstudy.service;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.smartstudy.config.IndexPartitionRegistry;
 import com.smartstudy.model.Document;
 import com.smartstudy.model.DocumentContent;
 import com.smartstudy.repository.DocumentContentRepository;
@@ -9,6 +11,8 @@ import org.apache.lucene.document.*;
 import org.apache.lucene.index.*;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.sandbox.search.QueryProfilerIndexSearcher;
+import org.apache.lucene.sandbox.search.QueryProfilerResult;
 import org.apache.lucene.search.*;
 import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.store.FSDirectory;
@@ -41,9 +45,16 @@ public class SearchService {
     @Autowired
     private StandardAnalyzer analyzer;
     
-    @Autowired
+    // Absent on replica nodes, which serve searches from replicated commit points only
+    @Autowired(required = false)
     private IndexWriter indexWriter;
     
+    @Autowired
+    private IndexPartitionRegistry partitionRegistry;
+    
+    @Value("${lucene.partitioning.enabled:false}")
+    private boolean partitioningEnabled;
+    
     /**
      * Index all document content
      */
@@ -51,14 +62,20 @@ public class SearchService {
         System.out.println("🔄 Starting full reindex of all documents...");
         
         // Clear existing index
-        indexWriter.deleteAll();
+        if (partitioningEnabled) {
+            for (String partition : partitionRegistry.listPartitions()) {
+                partitionRegistry.writer(partition).deleteAll();
+            }
+        } else {
+            writer().deleteAll();
+        }
         
         // Get all documents with their content
         List<Document> documents = documentRepository.findAll();
         int indexedCount = 0;
         
         for (Document document : documents) {
-            if (document.getStatus() == Document.DocumentStatus.COMPLETED) {
+            if (document.getStatus() != null && document.getStatus().hasContent()) {
                 List<DocumentContent> contents = documentContentRepository
                     .findByDocument_IdOrderByPageNumberAscSlideNumberAsc(document.getId());
                 
@@ -70,14 +87,84 @@ public class SearchService {
         }
         
         // Commit changes
-        indexWriter.commit();
+        commitIndex();
         System.out.println("✅ Indexed " + indexedCount + " content blocks from " + documents.size() + " documents");
     }
     
+    /**
+     * Rebuild a single index partition without touching the others
+     */
+    public void rebuildPartition(String partitionKey) throws IOException {
+        if (!partitioningEnabled) {
+            throw new IllegalStateException("Index partitioning is not enabled");
+        }
+        System.out.println("🔄 Rebuilding index partition: " + partitionKey);
+        
+        IndexWriter partitionWriter = partitionRegistry.writer(partitionKey);
+        partitionWriter.deleteAll();
+        
+        Long ownerId = IndexPartitionRegistry.ownerIdOf(partitionKey);
+        List<Document> documents = ownerId != null
+                ? documentRepository.findByOwnerId(ownerId)
+                : documentRepository.findByOwnerIdIsNull();
+        int indexedCount = 0;
+        
+        for (Document document : documents) {
+            if (document.getStatus() != null && document.getStatus().hasContent()) {
+                for (DocumentContent content : documentContentRepository
+                        .findByDocument_IdOrderByPageNumberAscSlideNumberAsc(document.getId())) {
+                    indexDocumentContent(document, content);
+                    indexedCount++;
+                }
+            }
+        }
+        
+        partitionWriter.commit();
+        System.out.println("✅ Indexed " + indexedCount + " content blocks into partition " + partitionKey);
+    }
+    
     /**
      * Index a single document content
      */
     public void indexDocumentContent(Document document, DocumentContent content) throws IOException {
+        writerFor(document).addDocument(toLuceneDocument(document, content));
+    }
+    
+    /**
+     * Replace the index entry of a content block that changed
+     */
+    public void updateDocumentContent(Document document, DocumentContent content) throws IOException {
+        writerFor(document).updateDocument(new Term("contentId", content.getId().toString()),
+                toLuceneDocument(document, content));
+    }
+    
+    /**
+     * Remove the index entry of a single content block
+     */
+    public void deleteDocumentContent(Document document, Long contentId) throws IOException {
+        writerFor(document).deleteDocuments(new Term("contentId", contentId.toString()));
+    }
+    
+    /**
+     * Whether any index entry of a document still carries an earlier file name, e.g. after its file was replaced
+     */
+    public boolean hasStaleFilename(Document document) throws IOException {
+        Query stale = new BooleanQuery.Builder()
+                .add(new TermQuery(new Term("documentId", document.getId().toString())), BooleanClause.Occur.MUST)
+                .add(new TermQuery(new Term("filename", document.getOriginalFilename())), BooleanClause.Occur.MUST_NOT)
+                .build();
+        List<String> partitions = partitioningEnabled
+                ? List.of(IndexPartitionRegistry.partitionKey(document.getOwnerId()))
+                : null;
+        try (IndexReader reader = openReader(partitions)) {
+            return new IndexSearcher(reader).count(stale) > 0;
+        }
+    }
+    
+    /**
+     * Build the Lucene document for a content block
+     */
+    private org.apache.lucene.document.Document toLuceneDocument(Document document, DocumentContent content) {
         org.apache.lucene.document.Document luceneDoc = new org.apache.lucene.document.Document();
 
         // Add fields to the Lucene document
@@ -87,6 +174,13 @@ public class SearchService {
         luceneDoc.add(new StringField("filename", document.getOriginalFilename(), Field.Store.YES));
         luceneDoc.add(new StringField("topic", content.getTopic() != null ? content.getTopic() : "", Field.Store.YES));
         luceneDoc.add(new StringField("sectionTitle", content.getSectionTitle() != null ? content.getSectionTitle() : "", Field.Store.YES));
+        
+        // Keyphrases are indexed individually so topic filters can match any of them
+        if (content.getKeyphrases() != null && !content.getKeyphrases().isEmpty()) {
+            for (String keyphrase : content.getKeyphrases().split(KeyphraseExtractor.SEPARATOR)) {
+                luceneDoc.add(new StringField("keyphrase", keyphrase, Field.Store.NO));
+            }
+        }
 
         // Add page/slide information
         if (content.getPageNumber() != null) {
@@ -106,115 +200,116 @@ public class SearchService {
         // Add timestamp
         luceneDoc.add(new LongPoint("timestamp", System.currentTimeMillis()));
 
-        // Add to index
-        indexWriter.addDocument(luceneDoc);
+        return luceneDoc;
     }
     
     /**
      * Commit pending index changes
      */
     public void commitIndex() throws IOException {
-        indexWriter.commit();
+        if (partitioningEnabled) {
+            partitionRegistry.commitAll();
+        } else {
+            writer().commit();
+        }
+    }
+    
+    /**
+     * Get the writer for the index (or partition) a document belongs to
+     */
+    private IndexWriter writerFor(Document document) throws IOException {
+        if (partitioningEnabled) {
+            return partitionRegistry.writer(IndexPartitionRegistry.partitionKey(document.getOwnerId()));
+        }
+        return writer();
+    }
+    
+    /**
+     * Get the index writer, failing on read-only replica nodes
+     */
+    private IndexWriter writer() {
+        if (indexWriter == null) {
+            throw new IllegalStateException("Search index is read-only on replica nodes; write through the primary");
+        }
+        return indexWriter;
+    }
+    
+    /**
+     * Open a reader over the given partitions (all partitions when null, the single index when unpartitioned)
+     */
+    private IndexReader openReader(Collection<String> partitions) throws IOException {
+        if (!partitioningEnabled) {
+            return DirectoryReader.open(indexDirectory);
+        }
+        return partitionRegistry.openReader(partitions != null ? partitions : partitionRegistry.listPartitions());
+    }
+    
+    /**
+     * Open a reader over the whole index (every partition), e.g. for corpus term statistics; the caller closes it
+     */
+    public IndexReader openCorpusReader() throws IOException {
+        return openReader(null);
+    }
+    
+    /**
+     * Create a searcher; partitioned readers are searched in parallel
+     */
+    private IndexSearcher newSearcher(IndexReader reader) {
+        if (partitioningEnabled) {
+            return new IndexSearcher(reader, partitionRegistry.searchExecutor());
+        }
+        return new IndexSearcher(reader);
+    }
+    
+    /**
+     * Partitions a user can see: their own plus the shared partition
+     */
+    private List<String> visiblePartitions(Long userId) {
+        List<String> partitions = new ArrayList<>();
+        partitions.add(IndexPartitionRegistry.SHARED_PARTITION);
+        if (userId != null) {
+            partitions.add(IndexPartitionRegistry.partitionKey(userId));
+        }
+        return partitions;
     }
     
     /**
      * Search for content using a query string
      */
     public List<SearchResult> search(String query, int maxResults) throws IOException, ParseException {
-        try (IndexReader reader = DirectoryReader.open(indexDirectory)) {
-            IndexSearcher searcher = new IndexSearcher(reader);
+        return search(query, maxResults, (Collection<String>) null);
+    }
+    
+    /**
+     * Search only the content a user can see
+     */
+    public List<SearchResult> searchForUser(String query, int maxResults, Long userId) throws IOException, ParseException {
+        return search(query, maxResults, visiblePartitions(userId));
+    }
+    
+    private List<SearchResult> search(String query, int maxResults, Collection<String> partitions)
+            throws IOException, ParseException {
+        try (IndexReader reader = openReader(partitions)) {
+            IndexSearcher searcher = newSearcher(reader);
             
-            Query luceneQuery;
-            if (query == null || query.trim().isEmpty()) {
-                // If no query, get ALL documents ordered by document ID and page number
-                luceneQuery = new MatchAllDocsQuery();
+            boolean emptyQuery = query == null || query.trim().isEmpty();
+            if (emptyQuery) {
                 // For empty queries, we want to get ALL results, not limit them
                 maxResults = Integer.MAX_VALUE;
-            } else {
-                // Create a more flexible query that handles natural language better
-                QueryParser parser = new QueryParser("content", analyzer);
-                
-                // Make the query more flexible by adding wildcards and handling common variations
-                String processedQuery = query.trim();
-                
-                // If it's a single word or short phrase, make it more flexible
-                if (processedQuery.split("\\s+").length <= 3) {
-                    // Don't add wildcards if the query already contains special characters
-                    if (!processedQuery.contains("*") && !processedQuery.contains("?") && !processedQuery.contains("(") && !processedQuery.contains(")")) {
-                        // Add wildcards to make it more flexible, but only if it's not a single character
-                        if (processedQuery.length() > 1) {
-                            processedQuery = "*" + processedQuery + "*";
-                        }
-                    }
-                }
-                
-                // Handle common variations (e.g., "dbms" vs "database management system")
-                if (processedQuery.toLowerCase().contains("dbms")) {
-                    processedQuery += " OR database OR database management system";
-                }
-                
-                try {
-                    luceneQuery = parser.parse(processedQuery);
-                } catch (ParseException e) {
-                    // If parsing fails, fall back to a simple term query
-                    System.out.println("⚠️ Query parsing failed, using fallback: " + e.getMessage());
-                    luceneQuery = new TermQuery(new Term("content", query.toLowerCase()));
-                }
             }
+            Query luceneQuery = buildQuery(query);
             
             // Execute search with much higher max results to get ALL candidates
             TopDocs results = searcher.search(luceneQuery, Math.max(maxResults, 1000));
             
             // Convert results to our format
             List<SearchResult> searchResults = new ArrayList<>();
+            StoredFields storedFields = searcher.storedFields();
             for (ScoreDoc hit : results.scoreDocs) {
-                org.apache.lucene.document.Document doc = searcher.doc(hit.doc);
-                SearchResult result = new SearchResult();
-                
-                result.setDocumentId(Long.parseLong(doc.get("documentId")));
-                result.setContentId(Long.parseLong(doc.get("contentId")));
-                result.setContent(doc.get("content"));
-                result.setFilename(doc.get("filename"));
-                result.setTopic(doc.get("topic"));
-                result.setSectionTitle(doc.get("sectionTitle"));
-                result.setScore(hit.score);
-                
-                // Get page/slide information
-                String pageNumber = doc.get("pageNumber");
-                if (pageNumber != null) {
-                    result.setPageNumber(Integer.parseInt(pageNumber));
-                }
-                
-                String slideNumber = doc.get("slideNumber");
-                if (slideNumber != null) {
-                    result.setSlideNumber(Integer.parseInt(slideNumber));
-                }
-                
-                searchResults.add(result);
+                searchResults.add(toSearchResult(storedFields.document(hit.doc), hit));
             }
             
-            // Sort by document ID first, then by page/slide number to maintain order
-            searchResults.sort((a, b) -> {
-                int docCompare = a.getDocumentId().compareTo(b.getDocumentId());
-                if (docCompare != 0) return docCompare;
-                
-                // If same document, sort by page number, then slide number
-                Integer aPage = a.getPageNumber() != null ? a.getPageNumber() : 0;
-                Integer bPage = b.getPageNumber() != null ? b.getPageNumber() : 0;
-                int pageCompare = aPage.compareTo(bPage);
-                if (pageCompare != 0) return pageCompare;
-                
-                Integer aSlide = a.getSlideNumber() != null ? a.getSlideNumber() : 0;
-                Integer bSlide = b.getSlideNumber() != null ? b.getSlideNumber() : 0;
-                return aSlide.compareTo(bSlide);
-            });
-            
-            // Return only the requested number of results (but for empty queries, return all)
-            if (query == null || query.trim().isEmpty()) {
-                return searchResults; // Return ALL results for empty queries
-            } else {
-                return searchResults.stream().limit(maxResults).collect(Collectors.toList());
-            }
+            return orderResults(searchResults, emptyQuery ? Integer.MAX_VALUE : maxResults);
         }
     }
     
@@ -223,69 +318,258 @@ public class SearchService {
      */
     public List<SearchResult> searchWithFilters(String query, String filename, String topic, int maxResults) 
             throws IOException, ParseException {
-        try (IndexReader reader = DirectoryReader.open(indexDirectory)) {
-            IndexSearcher searcher = new IndexSearcher(reader);
-            
-            // Create boolean query for combining filters
-            BooleanQuery.Builder booleanQuery = new BooleanQuery.Builder();
+        return searchWithFilters(query, filename, topic, maxResults, null);
+    }
+    
+    /**
+     * Search with filters, only over the content a user can see
+     */
+    public List<SearchResult> searchWithFiltersForUser(String query, String filename, String topic, int maxResults,
+                                                       Long userId) throws IOException, ParseException {
+        return searchWithFilters(query, filename, topic, maxResults, visiblePartitions(userId));
+    }
+    
+    private List<SearchResult> searchWithFilters(String query, String filename, String topic, int maxResults,
+                                                 Collection<String> partitions) throws IOException, ParseException {
+        try (IndexReader reader = openReader(partitions)) {
+            IndexSearcher searcher = newSearcher(reader);
             
-            // Add main content query
-            QueryParser parser = new QueryParser("content", analyzer);
-            Query contentQuery = parser.parse(query);
-            booleanQuery.add(contentQuery, BooleanClause.Occur.MUST);
+            // Execute search
+            TopDocs results = searcher.search(buildFilteredQuery(query, filename, topic), maxResults);
             
-            // Add filename filter if specified
-            if (filename != null && !filename.trim().isEmpty()) {
-                Query filenameQuery = new TermQuery(new Term("filename", filename));
-                booleanQuery.add(filenameQuery, BooleanClause.Occur.FILTER);
+            // Convert results
+            List<SearchResult> searchResults = new ArrayList<>();
+            StoredFields storedFields = searcher.storedFields();
+            for (ScoreDoc hit : results.scoreDocs) {
+                searchResults.add(toSearchResult(storedFields.document(hit.doc), hit));
             }
             
-            // Add topic filter if specified
-            if (topic != null && !topic.trim().isEmpty()) {
-                Query topicQuery = new TermQuery(new Term("topic", topic));
-                booleanQuery.add(topicQuery, BooleanClause.Occur.FILTER);
-            }
+            return searchResults;
+        }
+    }
+    
+    /**
+     * Run the same search as {@link #searchForUser} under Lucene's query profiler, over the partitions the user sees
+     */
+    public SearchProfile profileSearch(String query, int maxResults, Long userId) throws IOException, ParseException {
+        boolean emptyQuery = query == null || query.trim().isEmpty();
+        if (emptyQuery) {
+            maxResults = Integer.MAX_VALUE;
+        }
+        Query luceneQuery = buildQuery(query);
+        SearchProfile profile = runProfiled(luceneQuery, Math.max(maxResults, 1000), visiblePartitions(userId));
+        profile.setQuery(query);
+        profile.setResults(orderResults(profile.getResults(), emptyQuery ? Integer.MAX_VALUE : maxResults));
+        return profile;
+    }
+    
+    /**
+     * Run the same search as {@link #searchWithFiltersForUser} under Lucene's query profiler
+     */
+    public SearchProfile profileSearchWithFilters(String query, String filename, String topic, int maxResults, Long userId)
+            throws IOException, ParseException {
+        SearchProfile profile = runProfiled(buildFilteredQuery(query, filename, topic), maxResults, visiblePartitions(userId));
+        profile.setQuery(query);
+        return profile;
+    }
+    
+    /**
+     * Execute a query with a profiling searcher and collect the timing breakdown
+     */
+    private SearchProfile runProfiled(Query luceneQuery, int numHits, Collection<String> partitions) throws IOException {
+        try (IndexReader reader = openReader(partitions)) {
+            QueryProfilerIndexSearcher searcher = new QueryProfilerIndexSearcher(reader);
+            SearchProfile profile = new SearchProfile();
+            profile.setParsedQuery(luceneQuery.toString());
+            profile.setWildcardExpansions(countWildcardExpansions(reader, luceneQuery));
             
-            // Execute search
-            TopDocs results = searcher.search(booleanQuery.build(), maxResults);
+            long searchStart = System.nanoTime();
+            TopDocs results = searcher.search(luceneQuery, numHits);
+            profile.setSearchTimeNanos(System.nanoTime() - searchStart);
             
-            // Convert results
+            // Read the rewrite time before rewriting again for display, the profiler accumulates it
+            profile.setRewriteTimeNanos(searcher.getRewriteTime());
+            profile.setRewrittenQuery(searcher.rewrite(luceneQuery).toString());
+            profile.setClauses(searcher.getProfileResult());
+            profile.setTotalHits(results.totalHits.value);
+            
+            // Stored fields are loaded after the query has run, so time them on their own
+            long loadStart = System.nanoTime();
             List<SearchResult> searchResults = new ArrayList<>();
+            StoredFields storedFields = searcher.storedFields();
             for (ScoreDoc hit : results.scoreDocs) {
-                org.apache.lucene.document.Document doc = searcher.doc(hit.doc);
-                SearchResult result = new SearchResult();
-                
-                result.setDocumentId(Long.parseLong(doc.get("documentId")));
-                result.setContentId(Long.parseLong(doc.get("contentId")));
-                result.setContent(doc.get("content"));
-                result.setFilename(doc.get("filename"));
-                result.setTopic(doc.get("topic"));
-                result.setSectionTitle(doc.get("sectionTitle"));
-                result.setScore(hit.score);
-                
-                String pageNumber = doc.get("pageNumber");
-                if (pageNumber != null) {
-                    result.setPageNumber(Integer.parseInt(pageNumber));
-                }
-                
-                String slideNumber = doc.get("slideNumber");
-                if (slideNumber != null) {
-                    result.setSlideNumber(Integer.parseInt(slideNumber));
+                searchResults.add(toSearchResult(storedFields.document(hit.doc), hit));
+            }
+            profile.setStoredFieldsTimeNanos(System.nanoTime() - loadStart);
+            profile.setResults(searchResults);
+            return profile;
+        }
+    }
+    
+    /**
+     * Count how many index terms each wildcard/prefix clause expands to
+     */
+    private Map<String, Long> countWildcardExpansions(IndexReader reader, Query query) throws IOException {
+        List<MultiTermQuery> multiTermQueries = new ArrayList<>();
+        query.visit(new QueryVisitor() {
+            @Override
+            public void visitLeaf(Query leaf) {
+                if (leaf instanceof MultiTermQuery) {
+                    multiTermQueries.add((MultiTermQuery) leaf);
                 }
-                
-                searchResults.add(result);
             }
             
-            return searchResults;
+            @Override
+            public QueryVisitor getSubVisitor(BooleanClause.Occur occur, Query parent) {
+                return this;
+            }
+        });
+        
+        Map<String, Long> expansions = new LinkedHashMap<>();
+        for (MultiTermQuery multiTermQuery : multiTermQueries) {
+            long termCount = 0;
+            for (LeafReaderContext leaf : reader.leaves()) {
+                Terms terms = leaf.reader().terms(multiTermQuery.getField());
+                if (terms == null) {
+                    continue;
+                }
+                TermsEnum termsEnum = multiTermQuery.getTermsEnum(terms);
+                while (termsEnum.next() != null) {
+                    termCount++;
+                }
+            }
+            expansions.merge(multiTermQuery.toString(), termCount, Long::sum);
         }
+        return expansions;
+    }
+    
+    /**
+     * Build the Lucene query used by the basic search
+     */
+    private Query buildQuery(String query) {
+        if (query == null || query.trim().isEmpty()) {
+            // If no query, get ALL documents ordered by document ID and page number
+            return new MatchAllDocsQuery();
+        }
+        
+        // Create a more flexible query that handles natural language better
+        QueryParser parser = new QueryParser("content", analyzer);
+        
+        // Make the query more flexible by adding wildcards and handling common variations
+        String processedQuery = query.trim();
+        
+        // If it's a single word or short phrase, make it more flexible
+        if (processedQuery.split("\\s+").length <= 3) {
+            // Don't add wildcards if the query already contains special characters
+            if (!processedQuery.contains("*") && !processedQuery.contains("?") && !processedQuery.contains("(") && !processedQuery.contains(")")) {
+                // Add wildcards to make it more flexible, but only if it's not a single character
+                if (processedQuery.length() > 1) {
+                    processedQuery = "*" + processedQuery + "*";
+                }
+            }
+        }
+        
+        // Handle common variations (e.g., "dbms" vs "database management system")
+        if (processedQuery.toLowerCase().contains("dbms")) {
+            processedQuery += " OR database OR database management system";
+        }
+        
+        try {
+            return parser.parse(processedQuery);
+        } catch (ParseException e) {
+            // If parsing fails, fall back to a simple term query
+            System.out.println("⚠️ Query parsing failed, using fallback: " + e.getMessage());
+            return new TermQuery(new Term("content", query.toLowerCase()));
+        }
+    }
+    
+    /**
+     * Build the Lucene query used by the advanced search
+     */
+    private Query buildFilteredQuery(String query, String filename, String topic) throws ParseException {
+        // Create boolean query for combining filters
+        BooleanQuery.Builder booleanQuery = new BooleanQuery.Builder();
+        
+        // Add main content query
+        QueryParser parser = new QueryParser("content", analyzer);
+        Query contentQuery = parser.parse(query);
+        booleanQuery.add(contentQuery, BooleanClause.Occur.MUST);
+        
+        // Add filename filter if specified
+        if (filename != null && !filename.trim().isEmpty()) {
+            Query filenameQuery = new TermQuery(new Term("filename", filename));
+            booleanQuery.add(filenameQuery, BooleanClause.Occur.FILTER);
+        }
+        
+        // Add topic filter if specified, matching the block topic or any of its keyphrases
+        if (topic != null && !topic.trim().isEmpty()) {
+            BooleanQuery.Builder topicQuery = new BooleanQuery.Builder();
+            topicQuery.add(new TermQuery(new Term("topic", topic)), BooleanClause.Occur.SHOULD);
+            topicQuery.add(new TermQuery(new Term("keyphrase", topic.trim().toLowerCase())), BooleanClause.Occur.SHOULD);
+            booleanQuery.add(topicQuery.build(), BooleanClause.Occur.FILTER);
+        }
+        
+        return booleanQuery.build();
+    }
+    
+    /**
+     * Convert a stored Lucene document into a search result
+     */
+    private SearchResult toSearchResult(org.apache.lucene.document.Document doc, ScoreDoc hit) {
+        SearchResult result = new SearchResult();
+        
+        result.setDocumentId(Long.parseLong(doc.get("documentId")));
+        result.setContentId(Long.parseLong(doc.get("contentId")));
+        result.setContent(doc.get("content"));
+        result.setFilename(doc.get("filename"));
+        result.setTopic(doc.get("topic"));
+        result.setSectionTitle(doc.get("sectionTitle"));
+        result.setScore(hit.score);
+        
+        // Get page/slide information
+        String pageNumber = doc.get("pageNumber");
+        if (pageNumber != null) {
+            result.setPageNumber(Integer.parseInt(pageNumber));
+        }
+        
+        String slideNumber = doc.get("slideNumber");
+        if (slideNumber != null) {
+            result.setSlideNumber(Integer.parseInt(slideNumber));
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Sort results into reading order and apply the result limit
+     */
+    private List<SearchResult> orderResults(List<SearchResult> searchResults, int maxResults) {
+        // Sort by document ID first, then by page/slide number to maintain order
+        searchResults.sort((a, b) -> {
+            int docCompare = a.getDocumentId().compareTo(b.getDocumentId());
+            if (docCompare != 0) return docCompare;
+            
+            // If same document, sort by page number, then slide number
+            Integer aPage = a.getPageNumber() != null ? a.getPageNumber() : 0;
+            Integer bPage = b.getPageNumber() != null ? b.getPageNumber() : 0;
+            int pageCompare = aPage.compareTo(bPage);
+            if (pageCompare != 0) return pageCompare;
+            
+            Integer aSlide = a.getSlideNumber() != null ? a.getSlideNumber() : 0;
+            Integer bSlide = b.getSlideNumber() != null ? b.getSlideNumber() : 0;
+            return aSlide.compareTo(bSlide);
+        });
+        
+        // Return only the requested number of results (but for empty queries, return all)
+        return searchResults.stream().limit(maxResults).collect(Collectors.toList());
     }
     
     /**
      * Get search suggestions based on content
      */
     public List<String> getSearchSuggestions(String partialQuery, int maxSuggestions) throws IOException, ParseException {
-        try (IndexReader reader = DirectoryReader.open(indexDirectory)) {
-            IndexSearcher searcher = new IndexSearcher(reader);
+        try (IndexReader reader = openReader(null)) {
+            IndexSearcher searcher = newSearcher(reader);
             
             // Search for content containing the partial query
             QueryParser parser = new QueryParser("content", analyzer);
@@ -295,7 +579,7 @@ public class SearchService {
             
             Set<String> suggestions = new HashSet<>();
             for (ScoreDoc hit : results.scoreDocs) {
-                org.apache.lucene.document.Document doc = searcher.doc(hit.doc);
+                org.apache.lucene.document.Document doc = searcher.storedFields().document(hit.doc);
                 String content = doc.get("content");
                 
                 // Extract potential suggestions from content
@@ -317,11 +601,15 @@ public class SearchService {
      * Get search statistics
      */
     public Map<String, Object> getSearchStats() throws IOException {
-        try (IndexReader reader = DirectoryReader.open(indexDirectory)) {
+        try (IndexReader reader = openReader(null)) {
             Map<String, Object> stats = new HashMap<>();
             stats.put("totalDocuments", reader.numDocs());
             stats.put("indexSize", reader.maxDoc());
             stats.put("indexDirectory", indexDirectoryPath);
+            stats.put("partitioned", partitioningEnabled);
+            if (partitioningEnabled) {
+                stats.put("partitions", partitionRegistry.listPartitions());
+            }
             return stats;
         }
     }
@@ -336,10 +624,11 @@ public class SearchService {
         }
         
         // Remove existing index entries for this document
-        indexWriter.deleteDocuments(new Term("documentId", documentId.toString()));
+        IndexWriter documentWriter = writerFor(document);
+        documentWriter.deleteDocuments(new Term("documentId", documentId.toString()));
         
         // Reindex all content for this document
-        if (document.getStatus() == Document.DocumentStatus.COMPLETED) {
+        if (document.getStatus() != null && document.getStatus().hasContent()) {
             List<DocumentContent> contents = documentContentRepository
                 .findByDocument_IdOrderByPageNumberAscSlideNumberAsc(documentId);
             
@@ -348,7 +637,7 @@ public class SearchService {
             }
         }
         
-        indexWriter.commit();
+        documentWriter.commit();
         System.out.println("✅ Reindexed document: " + document.getOriginalFilename());
     }
     
@@ -357,8 +646,22 @@ public class SearchService {
      */
     public void deleteDocumentFromIndex(Long documentId) throws IOException {
         // Delete all entries for this document from the index
-        indexWriter.deleteDocuments(new Term("documentId", documentId.toString()));
-        indexWriter.commit();
+        Term documentTerm = new Term("documentId", documentId.toString());
+        if (partitioningEnabled) {
+            // Only the owning partition needs the delete; fall back to all of them if the row is already gone
+            Document document = documentRepository.findById(documentId).orElse(null);
+            List<String> partitions = document != null
+                    ? List.of(IndexPartitionRegistry.partitionKey(document.getOwnerId()))
+                    : partitionRegistry.listPartitions();
+            for (String partition : partitions) {
+                IndexWriter partitionWriter = partitionRegistry.writer(partition);
+                partitionWriter.deleteDocuments(documentTerm);
+                partitionWriter.commit();
+            }
+        } else {
+            writer().deleteDocuments(documentTerm);
+            writer().commit();
+        }
         System.out.println("🗑️ Removed document " + documentId + " from search index");
     }
     
@@ -404,4 +707,56 @@ public class SearchService {
         public float getScore() { return score; }
         public void setScore(float score) { this.score = score; }
     }
+    
+    /**
+     * Profiling output for a single search
+     */
+    public static class SearchProfile {
+        private String query;
+        private String parsedQuery;
+        private String rewrittenQuery;
+        private Map<String, Long> wildcardExpansions;
+        private List<QueryProfilerResult> clauses;
+        private long totalHits;
+        private long rewriteTimeNanos;
+        private long searchTimeNanos;
+        private long storedFieldsTimeNanos;
+        private long serializationTimeNanos;
+        @JsonIgnore
+        private List<SearchResult> results;
+        
+        // Getters and setters
+        public String getQuery() { return query; }
+        public void setQuery(String query) { this.query = query; }
+        
+        public String getParsedQuery() { return parsedQuery; }
+        public void setParsedQuery(String parsedQuery) { this.parsedQuery = parsedQuery; }
+        
+        public String getRewrittenQuery() { return rewrittenQuery; }
+        public void setRewrittenQuery(String rewrittenQuery) { this.rewrittenQuery = rewrittenQuery; }
+        
+        public Map<String, Long> getWildcardExpansions() { return wildcardExpansions; }
+        public void setWildcardExpansions(Map<String, Long> wildcardExpansions) { this.wildcardExpansions = wildcardExpansions; }
+        
+        public List<QueryProfilerResult> getClauses() { return clauses; }
+        public void setClauses(List<QueryProfilerResult> clauses) { this.clauses = clauses; }
+        
+        public long getTotalHits() { return totalHits; }
+        public void setTotalHits(long totalHits) { this.totalHits = totalHits; }
+        
+        public long getRewriteTimeNanos() { return rewriteTimeNanos; }
+        public void setRewriteTimeNanos(long rewriteTimeNanos) { this.rewriteTimeNanos = rewriteTimeNanos; }
+        
+        public long getSearchTimeNanos() { return searchTimeNanos; }
+        public void setSearchTimeNanos(long searchTimeNanos) { this.searchTimeNanos = searchTimeNanos; }
+        
+        public long getStoredFieldsTimeNanos() { return storedFieldsTimeNanos; }
+        public void setStoredFieldsTimeNanos(long storedFieldsTimeNanos) { this.storedFieldsTimeNanos = storedFieldsTimeNanos; }
+        
+        public long getSerializationTimeNanos() { return serializationTimeNanos; }
+        public void setSerializationTimeNanos(long serializationTimeNanos) { this.serializationTimeNanos = serializationTimeNanos; }
+        
+        public List<SearchResult> getResults() { return results; }
+        public void setResults(List<SearchResult> results) { this.results = results; }
+    }
 }
@@ -0,0 +1,165 @@
+package com.smartstudy.service;
+
+import com.smartstudy.model.Document.DocumentStatus;
+import com.smartstudy.repository.DocumentRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Service deciding whether a new upload is admitted, based on how far behind ingestion is
+ */
+@Service
+public class UploadAdmissionService {
+
+    private static final long MB = 1024 * 1024;
+
+    @Autowired
+    private IngestionExecutor ingestionExecutor;
+
+    @Autowired
+    private DocumentRepository documentRepository;
+
+    @Value("${file.upload.directory}")
+    private String uploadDirectory;
+
+    @Value("${upload.admission.enabled:true}")
+    private boolean admissionEnabled;
+
+    @Value("${upload.admission.queue-high-watermark:0.8}")
+    private double queueHighWatermark;
+
+    @Value("${upload.admission.max-pending-mb:500}")
+    private long maxPendingMb;
+
+    @Value("${upload.admission.min-free-disk-mb:1024}")
+    private long minFreeDiskMb;
+
+    @Value("${upload.admission.max-pending-per-user:5}")
+    private long maxPendingPerUser;
+
+    @Value("${upload.admission.default-retry-after-seconds:30}")
+    private long defaultRetryAfterSeconds;
+
+    @Value("${upload.admission.max-retry-after-seconds:600}")
+    private long maxRetryAfterSeconds;
+
+    /**
+     * Check whether an upload of the given size may be accepted now
+     *
+     * @param ownerId       uploading user, or null for anonymous uploads (no per-user quota)
+     * @param incomingBytes size of the upload, or -1 if unknown
+     */
+    public AdmissionDecision checkUpload(Long ownerId, long incomingBytes) {
+        if (!admissionEnabled) {
+            return AdmissionDecision.admit();
+        }
+        long bytes = Math.max(incomingBytes, 0);
+
+        // Free disk space where uploads are stored
+        try {
+            Path uploadPath = Paths.get(uploadDirectory).toAbsolutePath();
+            Path existing = uploadPath;
+            while (existing != null && !Files.exists(existing)) {
+                existing = existing.getParent();
+            }
+            if (existing != null) {
+                long usable = Files.getFileStore(existing).getUsableSpace();
+                if (usable - bytes < minFreeDiskMb * MB) {
+                    return AdmissionDecision.reject("Not enough free disk space for uploads", maxRetryAfterSeconds);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("⚠️ Could not check free disk space: " + e.getMessage());
+        }
+
+        // Ingestion queue depth
+        int queueDepth = ingestionExecutor.getQueueDepth();
+        int queueLimit = Math.max(1, (int) (ingestionExecutor.getQueueCapacity() * queueHighWatermark));
+        if (queueDepth >= queueLimit) {
+            long tasksAhead = queueDepth - queueLimit + 1;
+            return AdmissionDecision.reject("Document processing queue is full",
+                    retryAfterForTasks(tasksAhead));
+        }
+
+        // Bytes waiting to be processed
+        long pendingBytes = ingestionExecutor.getPendingBytes();
+        if (pendingBytes > 0 && pendingBytes + bytes > maxPendingMb * MB) {
+            long excessBytes = pendingBytes + bytes - maxPendingMb * MB;
+            return AdmissionDecision.reject("Too much uploaded data is waiting to be processed",
+                    retryAfterForBytes(excessBytes));
+        }
+
+        // Per-user quota on documents still being processed
+        if (ownerId != null && maxPendingPerUser > 0) {
+            long userPending = documentRepository.countByOwnerIdAndStatus(ownerId, DocumentStatus.PROCESSING);
+            if (userPending >= maxPendingPerUser) {
+                return AdmissionDecision.reject("You already have " + userPending + " documents processing",
+                        retryAfterForTasks(userPending - maxPendingPerUser + 1));
+            }
+        }
+
+        return AdmissionDecision.admit();
+    }
+
+    /**
+     * Estimated seconds until the given number of queued tasks have been worked off
+     */
+    private long retryAfterForTasks(long tasks) {
+        long averageMs = ingestionExecutor.getAverageProcessingMs();
+        if (averageMs <= 0) {
+            return defaultRetryAfterSeconds;
+        }
+        long workers = Math.max(1, ingestionExecutor.getCoreSize());
+        return clampRetryAfter((tasks * averageMs) / workers / 1000);
+    }
+
+    /**
+     * Estimated seconds until the given number of pending bytes have been worked off
+     */
+    private long retryAfterForBytes(long bytes) {
+        long bytesPerSecond = ingestionExecutor.getBytesPerSecond() * Math.max(1, ingestionExecutor.getCoreSize());
+        if (bytesPerSecond <= 0) {
+            return defaultRetryAfterSeconds;
+        }
+        return clampRetryAfter(bytes / bytesPerSecond);
+    }
+
+    private long clampRetryAfter(long seconds) {
+        return Math.min(maxRetryAfterSeconds, Math.max(1, seconds));
+    }
+
+    /**
+     * Outcome of an admission check
+     */
+    public static class AdmissionDecision {
+        private final boolean admitted;
+        private final String reason;
+        private final long retryAfterSeconds;
+
+        private AdmissionDecision(boolean admitted, String reason, long retryAfterSeconds) {
+            this.admitted = admitted;
+            this.reason = reason;
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        public static AdmissionDecision admit() {
+            return new AdmissionDecision(true, null, 0);
+        }
+
+        public static AdmissionDecision reject(String reason, long retryAfterSeconds) {
+            return new AdmissionDecision(false, reason, retryAfterSeconds);
+        }
+
+        public boolean isAdmitted() { return admitted; }
+
+        public String getReason() { return reason; }
+
+        public long getRetryAfterSeconds() { return retryAfterSeconds; }
+    }
+}
@@ -0,0 +1,188 @@
+package com.smartstudy.service;
+
+import org.apache.tika.Tika;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * One sequential pass over an upload's bytes, giving its SHA-256, its size and its sniffed type
+ *
+ * Fed as the bytes go by (or from a stream or file), so an upload is hashed, counted and checked
+ * without being read a second time. The first few KB are kept for content type detection and for
+ * checking that the file really is what its extension says.
+ */
+class UploadScan {
+
+    private static final int SNIFF_BYTES = 8 * 1024;
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private static final byte[] PDF_MAGIC = { '%', 'P', 'D', 'F', '-' };
+    private static final byte[] ZIP_MAGIC = { 'P', 'K', 3, 4 };
+    private static final byte[] EMPTY_ZIP_MAGIC = { 'P', 'K', 5, 6 };
+    private static final byte[] OLE2_MAGIC = { (byte) 0xD0, (byte) 0xCF, 0x11, (byte) 0xE0, (byte) 0xA1, (byte) 0xB1, 0x1A, (byte) 0xE1 };
+    private static final byte[] RTF_MAGIC = { '{', '\\', 'r', 't', 'f' };
+    private static final byte[] UTF8_BOM = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+
+    private static final Tika TIKA = new Tika();
+
+    private final MessageDigest digest;
+    private final byte[] prefix;
+    private int prefixLength;
+    private long size;
+    private String sha256;
+
+    UploadScan() {
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        prefix = new byte[SNIFF_BYTES];
+    }
+
+    private UploadScan(UploadScan other) {
+        try {
+            digest = (MessageDigest) other.digest.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("SHA-256 digest cannot be copied", e);
+        }
+        prefix = Arrays.copyOf(other.prefix, other.prefix.length);
+        prefixLength = other.prefixLength;
+        size = other.size;
+    }
+
+    /**
+     * Independent copy of this scan's state, to continue on without affecting this one
+     */
+    UploadScan copy() {
+        return new UploadScan(this);
+    }
+
+    /**
+     * Add the next bytes of the file
+     */
+    void update(byte[] bytes, int offset, int length) {
+        digest.update(bytes, offset, length);
+        if (prefixLength < SNIFF_BYTES) {
+            int kept = Math.min(length, SNIFF_BYTES - prefixLength);
+            System.arraycopy(bytes, offset, prefix, prefixLength, kept);
+            prefixLength += kept;
+        }
+        size += length;
+    }
+
+    /**
+     * Add the rest of a stream
+     */
+    UploadScan scan(InputStream in) throws IOException {
+        byte[] buffer = new byte[BUFFER_BYTES];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            update(buffer, 0, read);
+        }
+        return this;
+    }
+
+    /**
+     * Add a file's bytes from the position this scan has reached (the whole file for a new scan)
+     */
+    UploadScan scanFrom(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.position(size);
+            while (channel.read(buffer) != -1) {
+                update(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Number of bytes scanned
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * Hex SHA-256 of the bytes scanned; ends the scan
+     */
+    String sha256() {
+        if (sha256 == null) {
+            sha256 = HexFormat.of().formatHex(digest.digest());
+        }
+        return sha256;
+    }
+
+    /**
+     * Content type detected from the first bytes and the file name
+     */
+    String contentType(String filename) {
+        return TIKA.detect(Arrays.copyOf(prefix, prefixLength), filename);
+    }
+
+    /**
+     * Reject a file whose content is not what its extension says (e.g. an HTML page saved as .pdf)
+     *
+     * Only checked for the formats that have dedicated parsers; anything else goes to Tika anyway.
+     */
+    void checkMatchesExtension(String extension) {
+        boolean matches;
+        switch (extension.toLowerCase()) {
+            case ".pdf":
+                // Readers accept junk before the header, within the first KB
+                matches = indexOf(PDF_MAGIC, Math.min(prefixLength, 1024)) >= 0;
+                break;
+            case ".zip":
+            case ".docx":
+            case ".pptx":
+                matches = startsWith(ZIP_MAGIC) || startsWith(EMPTY_ZIP_MAGIC);
+                break;
+            case ".doc":
+            case ".ppt":
+                // Word and PowerPoint also save RTF and web pages under these names; those go to Tika
+                matches = startsWith(OLE2_MAGIC) || startsWith(RTF_MAGIC) || startsWithMarkup();
+                break;
+            default:
+                matches = true;
+                break;
+        }
+        if (!matches) {
+            throw new IllegalArgumentException("File content does not match its " + extension + " extension");
+        }
+    }
+
+    private boolean startsWith(byte[] magic) {
+        return prefixLength >= magic.length && Arrays.equals(prefix, 0, magic.length, magic, 0, magic.length);
+    }
+
+    /**
+     * Whether the file starts with a tag (HTML or XML), after an optional byte order mark and whitespace
+     */
+    private boolean startsWithMarkup() {
+        int i = startsWith(UTF8_BOM) ? UTF8_BOM.length : 0;
+        while (i < prefixLength && Character.isWhitespace(prefix[i])) {
+            i++;
+        }
+        return i < prefixLength && prefix[i] == '<';
+    }
+
+    private int indexOf(byte[] magic, int limit) {
+        for (int i = 0; i + magic.length <= limit; i++) {
+            if (Arrays.equals(prefix, i, i + magic.length, magic, 0, magic.length)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -123,7 +123,7 @@ async function loadDocumentStats() {
         // Calculate total pages
         let totalPages = 0;
         for (const doc of documents) {
-            if (doc.status === 'COMPLETED') {
+            if (doc.status === 'COMPLETED' || doc.status === 'PARTIAL') {
                 const contentResponse = await fetch(`${window.API_BASE}/documents/${doc.id}/content`);
                 if (contentResponse.ok) {
                     const content = await contentResponse.json();
@@ -237,7 +237,7 @@ function getActivityType(document) {
             icon: 'upload',
             iconClass: 'bx-time'
         };
-    } else if (status === 'COMPLETED') {
+    } else if (status === 'COMPLETED' || status === 'PARTIAL') {
         if (fileType?.includes('pdf')) {
             return {
                 title: 'PDF Uploaded',
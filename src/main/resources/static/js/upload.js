@@ -17,6 +17,10 @@ const sidebar = document.querySelector('.sidebar');
 let uploadQueue = [];
 let isUploading = false;
 
+// Files above the server's multipart limit are uploaded in chunks
+const CHUNKED_UPLOAD_THRESHOLD = 8 * 1024 * 1024;
+const CHUNK_MAX_ATTEMPTS = 5;
+
 // Initialize Upload Page
 document.addEventListener('DOMContentLoaded', function() {
     setupEventListeners();
@@ -181,29 +185,35 @@ async function uploadFile(file) {
     progressList.appendChild(progressItem);
     
     try {
-        // Create FormData
-        const formData = new FormData();
-        formData.append('file', file);
-        
-        console.log('📤 Sending request to:', `${window.API_BASE}/documents/upload`);
-        console.log('📄 FormData entries:', Array.from(formData.entries()));
-        
         // Update status to uploading
         updateProgressStatus(progressId, 'uploading', 'Uploading...');
         
-        // Upload file
-        const response = await fetch(`${window.API_BASE}/documents/upload`, {
-            method: 'POST',
-            body: formData
-        });
-        
-        console.log('📥 Response status:', response.status, response.statusText);
-        
-        if (!response.ok) {
-            throw new Error(`Upload failed: ${response.statusText}`);
+        let result;
+        if (file.size > CHUNKED_UPLOAD_THRESHOLD) {
+            // Large files go in resumable chunks, so a dropped connection only costs one chunk
+            result = await uploadInChunks(file, progressId);
+        } else {
+            // Create FormData
+            const formData = new FormData();
+            formData.append('file', file);
+            
+            console.log('📤 Sending request to:', `${window.API_BASE}/documents/upload`);
+            console.log('📄 FormData entries:', Array.from(formData.entries()));
+            
+            // Upload file
+            const response = await fetch(`${window.API_BASE}/documents/upload`, {
+                method: 'POST',
+                body: formData
+            });
+            
+            console.log('📥 Response status:', response.status, response.statusText);
+            
+            if (!response.ok) {
+                throw new Error(`Upload failed: ${response.statusText}`);
+            }
+            
+            result = await response.json();
         }
-        
-        const result = await response.json();
         console.log('📋 Response data:', result);
         
         if (result.success) {
@@ -250,6 +260,55 @@ async function uploadFile(file) {
     }
 }
 
+// Upload a file in chunks (init, put chunks by offset, complete), retrying failed chunks
+async function uploadInChunks(file, progressId) {
+    const base = `${window.API_BASE}/documents/uploads`;
+    const initResponse = await fetch(base, {
+        method: 'POST',
+        headers: { 'Content-Type': 'application/json' },
+        body: JSON.stringify({ filename: file.name, size: file.size })
+    });
+    const upload = await initResponse.json();
+    if (!initResponse.ok) {
+        throw new Error(upload.message || `Upload failed: ${initResponse.statusText}`);
+    }
+    console.log('📦 Chunked upload started:', upload.uploadId, 'chunk size', upload.chunkSize);
+    
+    for (let offset = 0; offset < file.size; offset += upload.chunkSize) {
+        const chunk = file.slice(offset, Math.min(offset + upload.chunkSize, file.size));
+        const headers = { 'Content-Type': 'application/octet-stream' };
+        if (window.crypto && crypto.subtle) {
+            const digest = await crypto.subtle.digest('SHA-256', await chunk.arrayBuffer());
+            headers['X-Chunk-SHA256'] = Array.from(new Uint8Array(digest))
+                .map(b => b.toString(16).padStart(2, '0')).join('');
+        }
+        for (let attempt = 1; ; attempt++) {
+            try {
+                const response = await fetch(`${base}/${upload.uploadId}?offset=${offset}`, {
+                    method: 'PUT',
+                    headers: headers,
+                    body: chunk
+                });
+                if (response.ok) break;
+                if (response.status !== 422 && response.status < 500) {
+                    const error = await response.json().catch(() => ({}));
+                    throw new Error(error.message || `Upload failed: ${response.statusText}`);
+                }
+                if (attempt >= CHUNK_MAX_ATTEMPTS) throw new Error(`Upload failed: ${response.statusText}`);
+            } catch (error) {
+                // Network errors are retried; anything the server rejected outright is not
+                if (!(error instanceof TypeError) || attempt >= CHUNK_MAX_ATTEMPTS) throw error;
+            }
+            console.log(`🔁 Retrying chunk at ${offset} (attempt ${attempt + 1})`);
+            await new Promise(resolve => setTimeout(resolve, 1000 * attempt));
+        }
+        updateProgressBar(progressId, Math.round(45 * Math.min(offset + upload.chunkSize, file.size) / file.size));
+    }
+    
+    const completeResponse = await fetch(`${base}/${upload.uploadId}/complete`, { method: 'POST' });
+    return completeResponse.json();
+}
+
 // Create Progress Item
 function createProgressItem(file, progressId) {
     const fileType = getFileType(file);
@@ -320,7 +379,7 @@ async function waitForProcessing(documentId, progressId) {
             if (response.ok) {
                 const document = await response.json();
                 
-                if (document.status === 'COMPLETED') {
+                if (document.status === 'COMPLETED' || document.status === 'PARTIAL') {
                     return;
                 } else if (document.status === 'FAILED') {
                     throw new Error('Document processing failed');
@@ -371,7 +430,7 @@ async function loadRecentUploads() {
             const fileType = getFileTypeFromDocument(doc);
             const fileSize = formatFileSize(doc.fileSize);
             const uploadDate = formatDate(doc.uploadDate);
-            const isCompleted = (doc.status === 'COMPLETED');
+            const isCompleted = (doc.status === 'COMPLETED' || doc.status === 'PARTIAL');
             
             return `
                 <div class="upload-item" onclick="${isCompleted ? `viewDocument(${doc.id})` : `event.stopPropagation();`}">